@@ -0,0 +1,87 @@
+package io.github.arlol.mvnx;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import io.github.arlol.mvnx.MavenExecutor.Artifact;
+import io.github.arlol.mvnx.MavenExecutor.Maven;
+
+/**
+ * Classpath assembly over a resolved, generated graph in which every artifact
+ * is reachable through many paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DependenciesBenchmark {
+
+	@Param({ "6" })
+	int depth;
+
+	@Param({ "40" })
+	int width;
+
+	@Param({ "5" })
+	int fanOut;
+
+	Path repository;
+	Artifact artifact;
+
+	@Setup
+	public void setup() throws IOException {
+		repository = Files.createTempDirectory("mvnx-benchmark");
+		RepositoryGenerator generator = new RepositoryGenerator();
+		generator.depth = depth;
+		generator.width = width;
+		generator.fanOut = fanOut;
+		String coordinates = generator.generate(repository);
+		Maven maven = new Maven();
+		maven.localRepository = repository;
+		maven.cacheDirectory = repository.resolve("cache");
+		maven.repositories = List.of();
+		maven.parallelism = 1;
+		artifact = ResolveBenchmark.artifact(coordinates);
+		maven.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileSystemUtils.deleteRecursively(repository);
+	}
+
+	@Benchmark
+	public Collection<Artifact> dependencies() {
+		return artifact.dependencies(MavenExecutor::classPathFilter);
+	}
+
+	@Benchmark
+	public Collection<Artifact> classPath() {
+		return artifact.classPath(
+				MavenExecutor::classPathFilter,
+				new LinkedHashMap<>()
+		);
+	}
+
+}
@@ -0,0 +1,143 @@
+package io.github.arlol.mvnx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.arlol.mvnx.MavenExecutor.Artifact;
+import io.github.arlol.mvnx.MavenExecutor.Maven;
+
+/**
+ * Manages the dependencies of a project whose parent imports a BOM the size
+ * of spring-boot-dependencies (about 1400 managed artifacts) with
+ * {@link Maven#manage(Artifact, List)} and with the linear scan it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManageBenchmark {
+
+	@Param({ "1400" })
+	int managed;
+
+	@Param({ "60" })
+	int dependencies;
+
+	List<Artifact> dependents;
+	List<Artifact> declared;
+
+	@Setup
+	public void setup() {
+		Artifact bom = new Artifact();
+		for (int i = 0; i < managed; i++) {
+			bom.dependencyManagement
+					.add(artifact("org.example.group" + i % 40, "managed" + i));
+		}
+		Artifact parent = new Artifact();
+		parent.parent = bom;
+		Artifact project = new Artifact();
+		project.parent = parent;
+		declared = new ArrayList<>();
+		for (int i = 0; i < dependencies; i++) {
+			Artifact dependency = artifact(
+					"org.example.group" + i * 7 % 40,
+					"managed" + i * 23 % managed
+			);
+			dependency.version = null;
+			dependency.scope = null;
+			project.dependencies.add(dependency);
+			declared.add(dependency);
+		}
+		dependents = new ArrayList<>();
+		dependents.add(project);
+		for (int i = 0; i < 4; i++) {
+			Artifact transitive = new Artifact();
+			transitive.dependencies.add(artifact("org.example.other", "lib" + i));
+			dependents.add(transitive);
+		}
+	}
+
+	@Benchmark
+	public int indexed() {
+		int versions = 0;
+		for (Artifact dependency : declared) {
+			Artifact artifact = dependency.copy();
+			Maven.manage(artifact, dependents);
+			versions += artifact.version == null ? 0 : 1;
+		}
+		return versions;
+	}
+
+	@Benchmark
+	public int stream() {
+		int versions = 0;
+		for (Artifact dependency : declared) {
+			Artifact artifact = dependency.copy();
+			streamManage(artifact, dependents);
+			versions += artifact.version == null ? 0 : 1;
+		}
+		return versions;
+	}
+
+	private static void streamManage(
+			Artifact artifact,
+			List<Artifact> dependents
+	) {
+		String version = null;
+		String scope = null;
+		List<Artifact> dependencies = dependents.stream()
+				.flatMap(dependent -> dependent.hierarchy().stream())
+				.flatMap(
+						dependent -> Stream.concat(
+								dependent.dependencies.stream(),
+								dependent.dependencyManagement.stream()
+						)
+				)
+				.filter(artifact::equalsArtifact)
+				.collect(Collectors.toList());
+		for (Artifact dependency : dependencies) {
+			if (version == null) {
+				version = dependency.version;
+			}
+			if (scope == null) {
+				scope = dependency.scope;
+			}
+			if (version != null && scope != null) {
+				break;
+			}
+		}
+		if (version != null) {
+			artifact.version = version;
+		}
+		if (scope == null) {
+			scope = "compile";
+		}
+		artifact.scope = scope;
+	}
+
+	private static Artifact artifact(String groupId, String artifactId) {
+		Artifact artifact = new Artifact();
+		artifact.groupId = groupId;
+		artifact.artifactId = artifactId;
+		artifact.version = "1.0.0";
+		return artifact;
+	}
+
+}
@@ -0,0 +1,93 @@
+package io.github.arlol.mvnx;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.arlol.mvnx.MavenExecutor.Artifact;
+import io.github.arlol.mvnx.MavenExecutor.Maven;
+import io.github.arlol.mvnx.MavenExecutor.PropertyScope;
+
+/**
+ * Property lookup and interpolation against the hierarchy of a project below
+ * a parent and a BOM that define 300 properties, like
+ * spring-boot-dependencies does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PropertyBenchmark {
+
+	List<Artifact> hierarchy;
+
+	@Setup
+	public void setup() {
+		Artifact bom = new Artifact();
+		for (int i = 0; i < 300; i++) {
+			bom.properties.put("library" + i + ".version", "1." + i);
+		}
+		bom.properties.put("project.version", "2.2.5.RELEASE");
+		Artifact parent = new Artifact();
+		parent.parent = bom;
+		parent.properties.put("java.version", "1.8");
+		Artifact project = new Artifact();
+		project.parent = parent;
+		project.properties.put("revision", "${library42.version}");
+		Artifact dependent = new Artifact();
+		dependent.properties.put("platform", "unix");
+		hierarchy = List.of(dependent, project);
+	}
+
+	@Benchmark
+	public String lookupProperty() {
+		return Maven.lookupProperty("library299.version", hierarchy);
+	}
+
+	@Benchmark
+	public String template() {
+		return Maven.template(
+				"${library7.version}-${revision}",
+				key -> Maven.lookupProperty(key, hierarchy)
+		);
+	}
+
+	@Benchmark
+	public String templateWithoutPlaceholders() {
+		return Maven.template(
+				"org.springframework.boot",
+				key -> Maven.lookupProperty(key, hierarchy)
+		);
+	}
+
+	/**
+	 * Six fields interpolated in one scope, as for every dependency in
+	 * {@link Maven#resolve(Artifact, List, java.util.function.Predicate)}.
+	 */
+	@Benchmark
+	public Artifact resolveProperties() {
+		PropertyScope properties = new PropertyScope(
+				key -> Maven.lookupProperty(key, hierarchy)
+		);
+		Artifact artifact = new Artifact();
+		artifact.groupId = "org.example";
+		artifact.artifactId = "library-${platform}";
+		artifact.version = "${library7.version}-${revision}";
+		artifact.scope = "compile";
+		Maven.resolveProperties(artifact, properties);
+		return artifact;
+	}
+
+}
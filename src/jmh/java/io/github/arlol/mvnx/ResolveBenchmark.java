@@ -0,0 +1,94 @@
+package io.github.arlol.mvnx;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import io.github.arlol.mvnx.MavenExecutor.Artifact;
+import io.github.arlol.mvnx.MavenExecutor.Maven;
+
+/**
+ * A full offline {@link Maven#resolve(Artifact, List, java.util.function.Predicate)}
+ * with a cold POM cache, reading POMs from the test repository and from a
+ * generated repository with a large BOM and long property chains. Parallelism
+ * is 1 so that only resolution itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResolveBenchmark {
+
+	Path testRepository;
+	Path generatedRepository;
+	String generated;
+
+	@Setup
+	public void setup() throws IOException {
+		testRepository = TestPaths.get("maven-repository");
+		generatedRepository = Files.createTempDirectory("mvnx-benchmark");
+		RepositoryGenerator generator = new RepositoryGenerator();
+		generator.depth = 5;
+		generator.width = 30;
+		generator.fanOut = 4;
+		generator.managed = 1000;
+		generator.propertyChain = 5;
+		generated = generator.generate(generatedRepository);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		FileSystemUtils.deleteRecursively(generatedRepository);
+	}
+
+	@Benchmark
+	public Artifact jgit() {
+		return resolve(
+				testRepository,
+				"org.eclipse.jgit:org.eclipse.jgit:5.6.1.202002131546-r"
+		);
+	}
+
+	@Benchmark
+	public Artifact generated() {
+		return resolve(generatedRepository, generated);
+	}
+
+	private Artifact resolve(Path repository, String coordinates) {
+		Maven maven = new Maven();
+		maven.localRepository = repository;
+		maven.cacheDirectory = generatedRepository.resolve("cache");
+		maven.repositories = List.of();
+		maven.parallelism = 1;
+		Artifact artifact = artifact(coordinates);
+		maven.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
+		return artifact;
+	}
+
+	static Artifact artifact(String coordinates) {
+		String[] parts = coordinates.split(":");
+		Artifact artifact = new Artifact();
+		artifact.groupId = parts[0];
+		artifact.artifactId = parts[1];
+		artifact.version = parts[2];
+		return artifact;
+	}
+
+}
@@ -1,46 +1,111 @@
 package io.github.arlol.mvnx;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
+import java.net.StandardProtocolFamily;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.net.UnixDomainSocketAddress;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.BodyPublishers;
-import java.net.http.HttpRequest.Builder;
 import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.ProtectionDomain;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 
 public class MavenExecutor {
 
@@ -50,26 +115,54 @@ public class MavenExecutor {
 		MavenExecutor mavenExecutor = new MavenExecutor();
 		mavenExecutor.parseArguments(args);
 		mavenExecutor.execute();
+		if (mavenExecutor.exitStatus != 0) {
+			System.exit(mavenExecutor.exitStatus);
+		}
 	}
 
 	private static final Pattern PROPERTIES_TOKEN = Pattern
 			.compile("\\$\\{([\\w.-]+)\\}");
 	private static final long TIMEOUT_MS = 10_000;
+	private static final Predicate<String> SIGNATURE = Pattern
+			.compile(
+					"META-INF/([^/]+\\.(SF|RSA|DSA|EC)|SIG-[^/]+|INDEX\\.LIST)"
+			)
+			.asMatchPredicate();
 
 	Maven maven = new Maven();
 	Artifact artifact = new Artifact();
 	String mainClass;
 	String[] passthroughArguments = new String[0];
+	boolean refresh = false;
+	boolean verbose = false;
+	boolean stats = false;
+	boolean statsJson = false;
+	boolean aot = false;
+	boolean bundle = false;
+	boolean warmUp = false;
+	boolean daemon = false;
+	boolean useDaemon = false;
+	String daemonCommand;
+	Duration idleTimeout = Duration.ofMinutes(30);
+	String batch;
+	int exitStatus = 0;
+	/**
+	 * The jars the warm-up opened. They stay open for the life of the launch,
+	 * so whenever the class loader opens one it finds the central directory
+	 * already read.
+	 */
+	private final List<JarFile> warmJars = new ArrayList<>();
 
 	public MavenExecutor parseArguments(String[] arguments) {
 		if (arguments.length == 0) {
 			throw new IllegalArgumentException("Missing artifact identifier");
 		}
-		String[] identifier = arguments[0].split(":");
-		artifact.groupId = identifier[0];
-		artifact.artifactId = identifier[1];
-		artifact.version = identifier[2];
-		for (int i = 1; i < arguments.length; i++) {
+		int first = 0;
+		if (!arguments[0].startsWith("--")) {
+			artifact = artifact(arguments[0]);
+			first = 1;
+		}
+		for (int i = first; i < arguments.length; i++) {
 			switch (arguments[i]) {
 			case "--repositories":
 				maven.repositories = Arrays.asList(arguments[++i].split(","));
@@ -91,17 +184,93 @@ public class MavenExecutor {
 			case "--saveToLocalRepository":
 				maven.saveToLocalRepository = true;
 				break;
+			case "--parallelism":
+				maven.parallelism = Integer.parseInt(arguments[++i]);
+				break;
+			case "--pomCacheSize":
+				maven.pomCache = new PomCache(Integer.parseInt(arguments[++i]));
+				break;
+			case "--cacheDirectory":
+				maven.cacheDirectory = Path.of(arguments[++i]);
+				break;
+			case "--refresh":
+				refresh = true;
+				break;
+			case "--raceRepositories":
+				maven.raceRepositories = true;
+				break;
+			case "--skipChecksums":
+				maven.verifyChecksums = false;
+				break;
+			case "--missTtl":
+				maven.missTtl = Duration.parse(arguments[++i]);
+				break;
+			case "--updatePolicy":
+				maven.updatePolicy = arguments[++i];
+				Maven.updateInterval(maven.updatePolicy);
+				break;
+			case "--verbose":
+				verbose = true;
+				break;
+			case "--stats":
+				stats = true;
+				break;
+			case "--statsJson":
+				statsJson = true;
+				break;
+			case "--aot":
+				aot = true;
+				break;
+			case "--bundle":
+				bundle = true;
+				break;
+			case "--warmUp":
+				warmUp = true;
+				break;
+			case "--daemon":
+				daemon = true;
+				break;
+			case "--useDaemon":
+				useDaemon = true;
+				break;
+			case "--invalidateDaemon":
+				daemonCommand = "invalidate";
+				break;
+			case "--stopDaemon":
+				daemonCommand = "stop";
+				break;
+			case "--idleTimeout":
+				idleTimeout = Duration.parse(arguments[++i]);
+				break;
+			case "--batch":
+				batch = arguments[++i];
+				break;
 			default:
 				break;
 			}
 		}
 		if (maven.localRepository == null) {
-			maven.localRepository = maven
-					.localRepository(maven.userHomeM2, maven.settingsXml);
+			maven.localRepository = maven.stats.time(
+					"settings",
+					null,
+					() -> maven.localRepository(
+							maven.userHomeM2,
+							maven.settingsXml
+					)
+			);
 		}
 		return this;
 	}
 
+	static Artifact artifact(String coordinates) {
+		String[] identifier = coordinates.split(":");
+		Artifact artifact = new Artifact();
+		artifact.groupId = identifier[0];
+		artifact.artifactId = identifier[1];
+		artifact.version = identifier[2];
+		return artifact;
+	}
+
 	public static boolean classPathFilter(Artifact artifact) {
 		return !(artifact.packaging.equals("pom")
 				|| "test".equals(artifact.scope)
@@ -111,423 +280,4240 @@ public class MavenExecutor {
 	public void execute() throws ClassNotFoundException, IllegalAccessException,
 			InvocationTargetException, NoSuchMethodException,
 			SecurityException {
-		maven.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
-		if (mainClass == null) {
-			mainClass = artifact.properties.get("mainClass");
+		if (daemon) {
+			try (Daemon server = new Daemon(daemonSocket(), idleTimeout)) {
+				server.run();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return;
+		}
+		if (daemonCommand != null) {
+			List<String> response = Daemon
+					.send(daemonSocket(), List.of(daemonCommand))
+					.orElseThrow(
+							() -> new IllegalStateException(
+									"No daemon listening on " + daemonSocket()
+							)
+					);
+			System.err.println(String.join(System.lineSeparator(), response));
+			return;
+		}
+		if (batch != null) {
+			batch();
+			return;
+		}
+		pinVersion();
+		Path path = lockfile();
+		Lockfile lockfile = null;
+		if (!refresh) {
+			lockfile = Lockfile.read(path);
+		}
+		maven.stats.lockfile = lockfile != null;
+		if (lockfile == null && useDaemon) {
+			lockfile = maven.stats.time(
+					"daemon",
+					null,
+					() -> Daemon.send(daemonSocket(), daemonRequest())
+							.map(Lockfile::parse)
+							.orElse(null)
+			);
+		}
+		if (lockfile == null) {
+			lockfile = resolve(path);
 		}
 		if (mainClass == null) {
-			mainClass = artifact.properties.get("start-class");
+			mainClass = lockfile.mainClass;
 		}
-		URL[] jars = getJarUrls(
-				artifact.dependencies(MavenExecutor::classPathFilter)
-		);
-		URLClassLoader classLoader = new URLClassLoader(jars);
-		Class<?> classToLoad = Class.forName(mainClass, true, classLoader);
-		classToLoad
-				.getMethod(
+		URL[] jars = lockfile.jars;
+		if (forgetMissingJars(jars)) {
+			artifact = artifact.copy();
+			jars = resolve(path).jars;
+		}
+		Method main = main(jars);
+		if (main == null) {
+			return;
+		}
+		printStats();
+		main.invoke(null, new Object[] { passthroughArguments });
+	}
+
+	/**
+	 * Loads the main class from the jars, or with {@link #aot} runs it in a
+	 * child JVM.
+	 *
+	 * @return the main method or null if the child JVM already ran it
+	 */
+	private Method main(URL[] jars)
+			throws ClassNotFoundException, NoSuchMethodException {
+		if (bundle) {
+			URL[] classPath = jars;
+			jars = new URL[] {
+					maven.stats.time("bundle", null, () -> bundle(classPath)) };
+		}
+		if (aot) {
+			printStats();
+			exitStatus = fork(jars);
+			return null;
+		}
+		Method main;
+		Stats.Timer timer = maven.stats.time("classload", null);
+		try (ExecutorService warmUpExecutor = Executors
+				.newVirtualThreadPerTaskExecutor()) {
+			ClassLoader classLoader;
+			List<Future<JarFile>> opening = List.of();
+			if (Arrays.stream(jars)
+					.allMatch(jar -> "file".equals(jar.getProtocol()))) {
+				if (warmUp) {
+					opening = warmUp(warmUpExecutor, jars);
+				}
+				classLoader = new URLClassLoader(jars);
+			} else {
+				classLoader = new MemoryClassLoader(jars, maven.contents(jars));
+			}
+			try {
+				Class<?> classToLoad = Class
+						.forName(mainClass, true, classLoader);
+				main = classToLoad.getMethod(
 						"main",
 						new Class[] { passthroughArguments.getClass() }
+				);
+			} finally {
+				if (!opening.isEmpty()) {
+					finishWarmUp(opening);
+				}
+			}
+		} finally {
+			timer.close();
+		}
+		return main;
+	}
+
+	/**
+	 * Lockfiles and the local index are trusted without looking at the jars,
+	 * and a URLClassLoader silently skips a jar that is gone. So before the
+	 * launch every local jar is checked once and the missing ones are dropped
+	 * from the index, so resolving again fetches them.
+	 *
+	 * @return whether a jar was missing
+	 */
+	private boolean forgetMissingJars(URL[] jars) {
+		Path localRepository = maven.localRepository.toAbsolutePath();
+		boolean missing = false;
+		for (URL jar : jars) {
+			if (!"file".equals(jar.getProtocol())) {
+				continue;
+			}
+			Path file = Path.of(URI.create(jar.toExternalForm()));
+			if (!Files.isRegularFile(file)) {
+				missing = true;
+				if (file.startsWith(localRepository)) {
+					Path path = localRepository.relativize(file);
+					maven.localIndex().remove(path);
+					maven.downloads.remove(path);
+				}
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * Resolves the artifact and writes the lockfile unless the classpath
+	 * contains snapshots.
+	 */
+	Lockfile resolve(Path path) {
+		maven.stats.time(
+				"resolve",
+				null,
+				() -> maven.resolve(
+						artifact,
+						List.of(),
+						MavenExecutor::classPathFilter
 				)
-				.invoke(null, new Object[] { passthroughArguments });
+		);
+		Lockfile lockfile = new Lockfile();
+		lockfile.mainClass = artifact.properties.get("mainClass");
+		if (lockfile.mainClass == null) {
+			lockfile.mainClass = artifact.properties.get("start-class");
+		}
+		Map<Artifact, Artifact> evictions = new LinkedHashMap<>();
+		Collection<Artifact> dependencies = maven.stats
+				.time("classpath", null, () -> {
+					Collection<Artifact> classPath = artifact.classPath(
+							MavenExecutor::classPathFilter,
+							evictions
+					);
+					lockfile.jars = getJarUrls(classPath);
+					return classPath;
+				});
+		if (verbose) {
+			evictions.forEach(
+					(evicted, nearest) -> System.err.println(
+							"Evicted " + evicted.coordinates()
+									+ " in favour of " + nearest.version
+					)
+			);
+		}
+		maven.repositoryCache().write();
+		maven.localIndex().write();
+		if (dependencies.stream().noneMatch(Artifact::isSnapshot)) {
+			lockfile.write(path);
+		}
+		return lockfile;
 	}
 
-	public URL[] getJarUrls(Collection<Artifact> dependencies) {
-		return dependencies.stream()
-				.map(dependency -> maven.uri(dependency, dependency.packaging))
-				.map(uri -> {
-					try {
-						return uri.toURL();
-					} catch (MalformedURLException e) {
-						throw new UncheckedIOException(e);
+	/**
+	 * Replaces LATEST, RELEASE or a version range by the version it currently
+	 * stands for, so the lockfile is only used while the metadata is fresh.
+	 */
+	void pinVersion() {
+		if (VersionRange.isDynamic(artifact.version)) {
+			artifact.version = maven.version(artifact);
+			maven.repositoryCache().write();
+		}
+	}
+
+	public Path daemonSocket() {
+		return maven.cacheDirectory.resolve("daemon.sock");
+	}
+
+	/**
+	 * The arguments a daemon needs to resolve the artifact exactly like this
+	 * process would.
+	 */
+	List<String> daemonRequest() {
+		List<String> request = new ArrayList<>();
+		request.add("resolve");
+		request.add(artifact.coordinates());
+		request.add("--repositories");
+		request.add(String.join(",", maven.repositories));
+		request.add("--localRepository");
+		request.add(maven.localRepository.toAbsolutePath().toString());
+		request.add("--cacheDirectory");
+		request.add(maven.cacheDirectory.toAbsolutePath().toString());
+		request.add("--parallelism");
+		request.add(String.valueOf(maven.parallelism));
+		request.add("--missTtl");
+		request.add(maven.missTtl.toString());
+		request.add("--updatePolicy");
+		request.add(maven.updatePolicy);
+		request.add("--pomCacheSize");
+		request.add(String.valueOf(maven.pomCache.capacity()));
+		if (!maven.verifyChecksums) {
+			request.add("--skipChecksums");
+		}
+		if (maven.saveToLocalRepository) {
+			request.add("--saveToLocalRepository");
+		}
+		if (maven.raceRepositories) {
+			request.add("--raceRepositories");
+		}
+		return request;
+	}
+
+	/**
+	 * Resolves all coordinates listed in the {@link #batch} file, or on stdin
+	 * for -, at the same time with one {@link Maven}, so shared parents and
+	 * BOMs are fetched and parsed once. Every coordinate gets its lockfile and
+	 * a line on stdout with its status: locked if its lockfile was already
+	 * there, resolved if it was written, unlocked if the classpath contains
+	 * snapshots and failed with the reason otherwise.
+	 *
+	 * @return the lines written to stdout split into their columns
+	 */
+	List<List<String>> batch() {
+		List<String> coordinates;
+		try {
+			List<String> lines = "-".equals(batch) ? new BufferedReader(
+					new InputStreamReader(System.in, StandardCharsets.UTF_8)
+			).lines().toList() : Files.readAllLines(Path.of(batch));
+			coordinates = lines.stream()
+					.map(String::strip)
+					.filter(line -> !line.isEmpty() && !line.startsWith("#"))
+					.toList();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		List<Future<List<String>>> results = new ArrayList<>();
+		try (ExecutorService executor = Executors
+				.newVirtualThreadPerTaskExecutor()) {
+			for (String coordinate : coordinates) {
+				results.add(executor.submit(() -> lock(coordinate)));
+			}
+		}
+		List<List<String>> report = new ArrayList<>();
+		for (Future<List<String>> result : results) {
+			List<String> line;
+			try {
+				line = result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+			if ("failed".equals(line.get(1))) {
+				exitStatus = 1;
+			}
+			System.out.println(String.join("\t", line));
+			report.add(line);
+		}
+		printStats();
+		return report;
+	}
+
+	private List<String> lock(String coordinates) {
+		try {
+			MavenExecutor executor = new MavenExecutor();
+			executor.maven = maven;
+			executor.artifact = artifact(coordinates);
+			executor.pinVersion();
+			Path path = executor.lockfile();
+			if (!refresh && Lockfile.read(path) != null) {
+				return List.of(coordinates, "locked", path.toString());
+			}
+			Lockfile lockfile = executor.resolve(path);
+			for (URL jar : lockfile.jars) {
+				maven.contents.remove(URI.create(jar.toExternalForm()));
+			}
+			if (!Files.isRegularFile(path)) {
+				return List.of(coordinates, "unlocked", "");
+			}
+			return List.of(coordinates, "resolved", path.toString());
+		} catch (RuntimeException e) {
+			return List
+					.of(coordinates, "failed", String.valueOf(e.getMessage()));
+		}
+	}
+
+	/**
+	 * Opens every jar of the classpath on its own virtual thread while the main
+	 * class is located and initialized. A JarFile shares the central directory
+	 * it read with every later JarFile of the same file as long as it is open,
+	 * so the class loader finds the jars already indexed instead of reading
+	 * them one at a time on first use. The caller closes the executor, which
+	 * joins the threads once the launch no longer needs them.
+	 */
+	private List<Future<JarFile>> warmUp(ExecutorService executor, URL[] jars) {
+		List<Future<JarFile>> warmJars = new ArrayList<>();
+		for (URL jar : jars) {
+			warmJars.add(executor.submit(() -> {
+				try {
+					File file = Path.of(jar.toURI()).toFile();
+					return maven.stats.time(
+							"warmup",
+							jar.toExternalForm(),
+							() -> new JarFile(file)
+					);
+				} catch (IOException | URISyntaxException e) {
+					// the class loader reports unreadable jars itself
+					return null;
+				}
+			}));
+		}
+		return warmJars;
+	}
+
+	/**
+	 * Waits for the warm-up and keeps its handles open, so jars the class
+	 * loader opens later share their central directories instead of being read
+	 * again. The time spent waiting is what the warm-up did not save.
+	 */
+	private void finishWarmUp(List<Future<JarFile>> opening) {
+		long start = System.nanoTime();
+		for (Future<JarFile> warmJar : opening) {
+			try {
+				JarFile jar = warmJar.get();
+				if (jar != null) {
+					warmJars.add(jar);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				// the class loader reports unreadable jars itself
+			}
+		}
+		maven.stats.warmUpWait = System.nanoTime() - start;
+		maven.stats.warmJars = warmJars.size();
+	}
+
+	private void printStats() {
+		if (statsJson) {
+			System.err.println(maven.stats.json(maven));
+		} else if (stats) {
+			System.err.print(maven.stats.report(maven));
+		}
+	}
+
+	/**
+	 * Runs the main class in a child JVM that maps the classes of earlier runs
+	 * from an AOT cache instead of loading and linking them again. The first
+	 * run with a classpath records the cache when the child exits, every later
+	 * run uses it. JDK 25 and later get an AOT cache, older ones a dynamic CDS
+	 * archive. Jars that only exist in memory are written to the cache
+	 * directory first, since the child needs them on disk.
+	 *
+	 * @return the exit status of the child
+	 */
+	public int fork(URL[] jars) {
+		try {
+			List<Path> classPath = jarFiles(jars);
+			Path cache = aotCache(classPath);
+			boolean aotCache = Runtime.version().feature() >= 25;
+			List<String> command = new ArrayList<>();
+			command.add(
+					Path.of(System.getProperty("java.home"), "bin", "java")
+							.toString()
+			);
+			Path recording = null;
+			if (Files.isRegularFile(cache)) {
+				command.add(
+						(aotCache ? "-XX:AOTCache=" : "-XX:SharedArchiveFile=")
+								+ cache
+				);
+			} else {
+				Files.createDirectories(maven.cacheDirectory.resolve("aot"));
+				recording = cache.resolveSibling(
+						ProcessHandle.current().pid() + "-"
+								+ cache.getFileName()
+				);
+				command.add(
+						(aotCache ? "-XX:AOTCacheOutput="
+								: "-XX:ArchiveClassesAtExit=") + recording
+				);
+			}
+			command.add("-cp");
+			command.add(
+					String.join(
+							File.pathSeparator,
+							classPath.stream().map(Path::toString).toList()
+					)
+			);
+			command.add(mainClass);
+			command.addAll(Arrays.asList(passthroughArguments));
+			int status = new ProcessBuilder(command).inheritIO()
+					.start()
+					.waitFor();
+			if (recording != null && Files.isRegularFile(recording)) {
+				Files.move(
+						recording,
+						cache,
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE
+				);
+			}
+			return status;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private List<Path> jarFiles(URL[] jars) throws IOException {
+		List<URL> remote = Arrays.stream(jars)
+				.filter(jar -> !"file".equals(jar.getProtocol()))
+				.filter(jar -> !Files.isRegularFile(jarFile(jar)))
+				.toList();
+		List<byte[]> contents = maven.contents(remote.toArray(URL[]::new));
+		for (int i = 0; i < remote.size(); i++) {
+			Path file = jarFile(remote.get(i));
+			Files.createDirectories(maven.cacheDirectory.resolve("jars"));
+			Path temporary = file.resolveSibling(
+					file.getFileName() + "." + ProcessHandle.current().pid()
+							+ ".tmp"
+			);
+			Files.write(temporary, contents.get(i));
+			Files.move(
+					temporary,
+					file,
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE
+			);
+		}
+		List<Path> files = new ArrayList<>();
+		for (URL jar : jars) {
+			files.add(jarFile(jar));
+		}
+		return files;
+	}
+
+	private Path jarFile(URL jar) {
+		if ("file".equals(jar.getProtocol())) {
+			try {
+				return Path.of(jar.toURI());
+			} catch (URISyntaxException e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+		return maven.cacheDirectory.resolve("jars")
+				.resolve(Maven.sha256(jar.toExternalForm()) + ".jar");
+	}
+
+	/**
+	 * The AOT cache of a launch is keyed by the JVM, the main class and the
+	 * classpath including the size and modification time of every jar, which
+	 * the JVM would otherwise reject the cache for.
+	 */
+	public Path aotCache(List<Path> classPath) throws IOException {
+		List<String> key = new ArrayList<>();
+		key.add(System.getProperty("java.home"));
+		key.add(Runtime.version().toString());
+		key.add(mainClass);
+		for (Path jar : classPath) {
+			key.add(fingerprint(jar));
+		}
+		return maven.cacheDirectory.resolve("aot")
+				.resolve(Maven.sha256(String.join("\n", key)) + ".aot");
+	}
+
+	private static String fingerprint(Path jar) throws IOException {
+		return jar.toAbsolutePath() + ":" + Files.size(jar) + ":"
+				+ Files.getLastModifiedTime(jar).toMillis();
+	}
+
+	/**
+	 * Replaces a file with the lines through a uniquely named temporary file
+	 * next to it, so concurrent writers in this or another process never share
+	 * a temporary file and readers see either version completely.
+	 */
+	static void writeLines(Path file, List<String> lines) throws IOException {
+		Path parent = file.getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		Path temporary = Files.createTempFile(
+				parent == null ? Path.of("") : parent,
+				String.valueOf(file.getFileName()) + ".",
+				".tmp"
+		);
+		try {
+			Files.write(temporary, lines, StandardCharsets.UTF_8);
+			Files.move(
+					temporary,
+					file,
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE
+			);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Merges the jars of a classpath into one archive in the bundles folder of
+	 * the cache directory, so a launch opens and searches a single jar instead
+	 * of every one of them. Like the AOT cache it is keyed by the size and
+	 * modification time of every jar and jars that only exist in memory are
+	 * written to the cache directory first.
+	 *
+	 * @return the URL of the bundle
+	 */
+	public URL bundle(URL[] jars) {
+		try {
+			List<String> key = new ArrayList<>();
+			List<Path> classPath = jarFiles(jars);
+			for (Path jar : classPath) {
+				key.add(fingerprint(jar));
+			}
+			Path bundle = maven.cacheDirectory.resolve("bundles")
+					.resolve(Maven.sha256(String.join("\n", key)) + ".jar");
+			if (!Files.isRegularFile(bundle)) {
+				Files.createDirectories(
+						maven.cacheDirectory.resolve("bundles")
+				);
+				Path temporary = bundle.resolveSibling(
+						bundle.getFileName() + "."
+								+ ProcessHandle.current().pid() + ".tmp"
+				);
+				try {
+					writeBundle(classPath, temporary);
+					Files.move(
+							temporary,
+							bundle,
+							StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE
+					);
+				} finally {
+					Files.deleteIfExists(temporary);
+				}
+			}
+			return bundle.toUri().toURL();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Copies the entries of the jars into one jar. The first jar with an entry
+	 * wins like on a classpath, except for service files, which are
+	 * concatenated in classpath order. Manifests, signatures and indexes of the
+	 * jars are dropped as they no longer describe the result, which is a
+	 * multi-release jar if any of the jars was.
+	 */
+	static void writeBundle(List<Path> classPath, Path target)
+			throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes()
+				.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		for (Path jar : classPath) {
+			try (JarFile file = new JarFile(jar.toFile(), false)) {
+				if (file.isMultiRelease()) {
+					manifest.getMainAttributes()
+							.put(Attributes.Name.MULTI_RELEASE, "true");
+				}
+			}
+		}
+		Set<String> written = new HashSet<>();
+		written.add(JarFile.MANIFEST_NAME);
+		Map<String, ByteArrayOutputStream> services = new LinkedHashMap<>();
+		try (JarOutputStream bundle = new JarOutputStream(
+				Files.newOutputStream(target),
+				manifest
+		)) {
+			for (Path jar : classPath) {
+				try (JarFile file = new JarFile(jar.toFile(), false)) {
+					for (Enumeration<JarEntry> entries = file.entries(); entries
+							.hasMoreElements();) {
+						JarEntry entry = entries.nextElement();
+						String name = entry.getName();
+						if (SIGNATURE.test(name)) {
+							continue;
+						}
+						if (name.startsWith("META-INF/services/")
+								&& !entry.isDirectory()) {
+							ByteArrayOutputStream service = services
+									.computeIfAbsent(
+											name,
+											key -> new ByteArrayOutputStream()
+									);
+							try (InputStream in = file.getInputStream(entry)) {
+								in.transferTo(service);
+							}
+							service.write('\n');
+						} else if (written.add(name)) {
+							JarEntry copy = new JarEntry(name);
+							copy.setTime(entry.getTime());
+							bundle.putNextEntry(copy);
+							try (InputStream in = file.getInputStream(entry)) {
+								in.transferTo(bundle);
+							}
+							bundle.closeEntry();
+						}
 					}
-				})
-				.toArray(URL[]::new);
+				}
+			}
+			for (Map.Entry<String, ByteArrayOutputStream> service : services
+					.entrySet()) {
+				bundle.putNextEntry(new JarEntry(service.getKey()));
+				service.getValue().writeTo(bundle);
+				bundle.closeEntry();
+			}
+		}
+	}
+
+	public URL[] getJarUrls(Collection<Artifact> dependencies) {
+		return dependencies.stream().map(maven::classPathUri).map(uri -> {
+			try {
+				return uri.toURL();
+			} catch (MalformedURLException e) {
+				throw new UncheckedIOException(e);
+			}
+		}).toArray(URL[]::new);
+	}
+
+	/**
+	 * The lockfile remembers the classpath and main class of a previous launch.
+	 * It is keyed by everything that influences resolution so a warm launch can
+	 * skip parsing and probing altogether.
+	 */
+	public Path lockfile() {
+		String key = String.join(
+				"\n",
+				artifact.groupId + ":" + artifact.artifactId + ":"
+						+ artifact.version,
+				String.join(",", maven.repositories),
+				maven.localRepository.toAbsolutePath().toString(),
+				String.valueOf(maven.saveToLocalRepository)
+		);
+		return maven.cacheDirectory.resolve("classpath")
+				.resolve(Maven.sha256(key) + ".classpath");
 	}
 
 	public static class Maven {
 
+		private static final Predicate<String> SHA1 = Pattern
+				.compile("[0-9a-fA-F]{40}")
+				.asMatchPredicate();
+		private static final String METADATA = "maven-metadata.xml";
+
 		Path userHomeM2 = userHomeM2(Path.of(System.getProperty("user.home")));
 		Path settingsXml = settingsXml(userHomeM2);
 		Path localRepository;
+		Path cacheDirectory = userHomeM2.resolve("mvnx");
 		boolean saveToLocalRepository = false;
 		Collection<String> repositories = List.of(
 				"https://repo.maven.apache.org/maven2/",
 				"https://jitpack.io/"
 		);
 
-		private DocumentBuilder documentBuilder;
+		int parallelism = 16;
+		PomCache pomCache = new PomCache(1024);
+		Transport transport = new Transport();
+		Stats stats = new Stats();
+		Duration missTtl = Duration.ofHours(24);
+		boolean raceRepositories = false;
+		boolean verifyChecksums = true;
+		String updatePolicy = "daily";
+		private RepositoryCache repositoryCache;
+		private LocalIndex localIndex;
+
+		private final Map<Path, CompletableFuture<Pom>> poms = new ConcurrentHashMap<>();
+		private ExecutorService executor;
+		private Semaphore permits;
+		private Semaphore downloadPermits;
+		final Map<Path, Future<URI>> downloads = new ConcurrentHashMap<>();
+		private final Map<URI, byte[]> contents = new ConcurrentHashMap<>();
+		private final Map<Path, Map.Entry<FileTime, Metadata>> parsedMetadata = new ConcurrentHashMap<>();
+
+		public Artifact pom(Artifact artifact) {
+			Pom cached = pomCache.get(artifact);
+			if (cached != null) {
+				if (artifact.remote == null) {
+					artifact.remote = cached.remote;
+				}
+				return cached.model;
+			}
+			Path path = path(artifact, "pom");
+			CompletableFuture<Pom> claimed = new CompletableFuture<>();
+			CompletableFuture<Pom> pending = poms.putIfAbsent(path, claimed);
+			Pom pom = null;
+			if (pending != null) {
+				pom = await(pending);
+				poms.remove(path, pending);
+			}
+			if (pom == null) {
+				try {
+					pom = fetchPom(artifact);
+				} finally {
+					claimed.complete(pom);
+					poms.remove(path, claimed);
+				}
+			}
+			pomCache.put(artifact, pom);
+			if (artifact.remote == null) {
+				artifact.remote = pom.remote;
+			}
+			return pom.model;
+		}
+
+		private Pom fetchPom(Artifact artifact) {
+			Path path = path(artifact, "pom");
+			Path absolutePath = localRepository.resolve(path);
+			try {
+				return stats.time("pom", artifact.coordinates(), () -> {
+					Pom pom = new Pom();
+					boolean revalidate = revalidates(absolutePath);
+					InputStream inputStream = revalidate ? null : local(path);
+					if (inputStream == null && saveToLocalRepository) {
+						inputStream = Files.newInputStream(
+								Path.of(
+										retrieve(
+												artifact,
+												path,
+												absolutePath,
+												revalidate
+										)
+								)
+						);
+						pom.remote = artifact.remote;
+					} else if (inputStream == null) {
+						inputStream = remote(
+								artifact,
+								path,
+								remote -> inputStream(
+										remote,
+										remotePath(remote, artifact, path)
+								)
+						);
+						pom.remote = artifact.remote;
+					}
+					try (InputStream content = inputStream) {
+						pom.model = stats.time(
+								"parse",
+								null,
+								() -> PomReader.read(content)
+						);
+					}
+					return pom;
+				});
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Starts fetching and parsing the POM of the given artifact in the
+		 * background. {@link #pom(Artifact)} picks up the result so the
+		 * sequential walk in {@link #resolve(Artifact, List, Predicate)} only
+		 * waits for I/O that has not finished yet.
+		 */
+		public void prefetch(Artifact artifact) {
+			if (parallelism <= 1 || !isLiteral(artifact)
+					|| pomCache.contains(artifact)) {
+				return;
+			}
+			Artifact probe = artifact.copy();
+			Path path = path(probe, "pom");
+			CompletableFuture<Pom> future = new CompletableFuture<>();
+			if (poms.putIfAbsent(path, future) != null) {
+				return;
+			}
+			executor().execute(() -> {
+				try {
+					permits.acquire();
+					try {
+						Pom pom = fetchPom(probe);
+						prefetchReferences(pom.model);
+						future.complete(pom);
+					} finally {
+						permits.release();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					future.complete(null);
+				} catch (RuntimeException e) {
+					// pom(Artifact) fetches it again and reports the failure
+					future.complete(null);
+				}
+			});
+		}
+
+		private void prefetch(
+				Artifact dependency,
+				List<Artifact> dependents,
+				PropertyScope properties,
+				Predicate<Artifact> filter
+		) {
+			if (parallelism <= 1) {
+				return;
+			}
+			Artifact probe = dependency.copy();
+			if (filter.test(probe)) {
+				resolveProperties(probe, properties);
+				if (filter.test(probe)) {
+					stats.time("manage", null, () -> manage(probe, dependents));
+					if (filter.test(probe)) {
+						prefetch(probe);
+					}
+				}
+			}
+		}
+
+		private void prefetchReferences(Artifact model) {
+			if (model.parent != null) {
+				prefetch(model.parent);
+			}
+			for (Artifact dependency : model.dependencyManagement) {
+				if ("import".equals(dependency.scope)) {
+					prefetch(dependency);
+				}
+			}
+		}
+
+		private synchronized ExecutorService executor() {
+			if (executor == null) {
+				permits = new Semaphore(parallelism);
+				downloadPermits = new Semaphore(parallelism);
+				executor = Executors.newVirtualThreadPerTaskExecutor();
+			}
+			return executor;
+		}
+
+		private static Pom await(CompletableFuture<Pom> future) {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private static boolean isLiteral(Artifact artifact) {
+			return Stream
+					.of(artifact.groupId, artifact.artifactId, artifact.version)
+					.allMatch(value -> value != null && !value.contains("${"))
+					&& !VersionRange.isDynamic(artifact.version);
+		}
+
+		/**
+		 * Drops the POMs and files of snapshot versions, which may change in
+		 * the repository while a long-lived instance keeps them.
+		 */
+		void removeSnapshots() {
+			pomCache.removeSnapshots();
+			downloads.keySet()
+					.removeIf(path -> path.toString().contains("-SNAPSHOT"));
+		}
+
+		public URI uri(Artifact artifact, String extension) {
+			Future<URI> download = downloads
+					.get(Maven.path(artifact, extension));
+			if (download != null) {
+				URI uri = result(download);
+				if (uri != null) {
+					return uri;
+				}
+			}
+			return locate(artifact, extension);
+		}
+
+		/**
+		 * Starts looking up - and with {@link #saveToLocalRepository}
+		 * downloading - the file of an artifact whose coordinates are final
+		 * while the rest of the tree is still being resolved.
+		 * {@link #uri(Artifact, String)} then only waits for downloads that are
+		 * still running.
+		 */
+		public void download(Artifact artifact) {
+			if (parallelism <= 1) {
+				return;
+			}
+			Artifact probe = artifact.copy();
+			String extension = probe.packaging;
+			downloads.computeIfAbsent(
+					Maven.path(probe, extension),
+					path -> submitDownload(() -> locate(probe, extension))
+			);
+		}
+
+		/**
+		 * Runs a download on its own virtual thread once one of the
+		 * {@link #parallelism} download permits is free. The .sha1 sidecar it
+		 * may request alongside needs no permit of its own, as the download
+		 * holding one would wait for it.
+		 */
+		private <T> Future<T> submitDownload(Callable<T> download) {
+			ExecutorService executor = executor();
+			return executor.submit(() -> {
+				downloadPermits.acquire();
+				try {
+					return download.call();
+				} finally {
+					downloadPermits.release();
+				}
+			});
+		}
+
+		/**
+		 * Records the depth at which a version of the artifact was reached. The
+		 * graph is walked depth first, so a different version that was already
+		 * reached as near to the root or nearer wins the mediation and neither
+		 * this version nor its dependencies are fetched in advance.
+		 */
+		private static boolean mayWin(
+				Artifact artifact,
+				int depth,
+				Map<List<String>, Map.Entry<Integer, String>> nearest
+		) {
+			List<String> key = Artifact.managementKey(artifact);
+			Map.Entry<Integer, String> seen = nearest.get(key);
+			if (seen != null && seen.getKey() <= depth) {
+				return seen.getValue().equals(artifact.version);
+			}
+			nearest.put(key, Map.entry(depth, artifact.version));
+			return true;
+		}
+
+		/**
+		 * Opens a file the {@link LocalIndex} knows or finds in the local
+		 * repository. A file that turns out to be gone is removed from the
+		 * index.
+		 *
+		 * @return the file or null if it is not in the local repository
+		 */
+		private InputStream local(Path path) throws IOException {
+			if (!localIndex().exists(path)) {
+				return null;
+			}
+			try {
+				return Files.newInputStream(localRepository.resolve(path));
+			} catch (NoSuchFileException e) {
+				localIndex().remove(path);
+				return null;
+			}
+		}
+
+		/**
+		 * The file of an artifact on the classpath. Like POMs, local jars are
+		 * taken from the index without looking at the file system; a stale
+		 * entry shows when the jar is opened.
+		 */
+		public URI classPathUri(Artifact artifact) {
+			return uri(artifact, artifact.packaging);
+		}
+
+		private URI locate(Artifact artifact, String extension) {
+			Path path = Maven.path(artifact, extension);
+			Path absolutePath = localRepository.resolve(path);
+			boolean revalidate = revalidates(absolutePath);
+			if (!revalidate && localIndex().exists(path)) {
+				return absolutePath.toUri();
+			}
+			return retrieve(artifact, path, absolutePath, revalidate);
+		}
+
+		private URI retrieve(
+				Artifact artifact,
+				Path path,
+				Path absolutePath,
+				boolean revalidate
+		) {
+			URI uri = stats.time("download", artifact.coordinates(), () -> {
+				if (revalidate) {
+					return revalidate(artifact, path, absolutePath);
+				}
+				return remote(
+						artifact,
+						path,
+						remote -> uri(
+								remote,
+								remotePath(remote, artifact, path),
+								absolutePath
+						)
+				);
+			});
+			if (saveToLocalRepository) {
+				localIndex().add(path);
+			}
+			return uri;
+		}
+
+		/**
+		 * Asks the remote the artifact was last found in and then every
+		 * repository in order until {@code fetch} returns a result. A remote
+		 * that is no longer configured is not asked and one that cannot be
+		 * reached is skipped. Repositories that recently did not have the path
+		 * are skipped unless no other repository has it either.
+		 */
+		private <T> T remote(
+				Artifact artifact,
+				Path path,
+				Function<String, T> fetch
+		) {
+			RepositoryCache cache = repositoryCache();
+			Collection<String> preferred = new LinkedHashSet<>();
+			for (String remote : Arrays
+					.asList(artifact.remote, cache.remote(artifact))) {
+				if (remote != null && repositories.contains(remote)
+						&& !cache.isMissing(remote, path, missTtl)) {
+					preferred.add(remote);
+				}
+			}
+			for (String remote : preferred) {
+				try {
+					T result = lookup(artifact, path, List.of(remote), fetch);
+					if (result != null) {
+						return result;
+					}
+				} catch (IllegalStateException e) {
+					// unreachable now, the other repositories may have it
+				}
+			}
+			List<String> candidates = new ArrayList<>();
+			List<String> skipped = new ArrayList<>();
+			for (String remote : repositories) {
+				if (preferred.contains(remote)) {
+					continue;
+				}
+				if (cache.isMissing(remote, path, missTtl)) {
+					skipped.add(remote);
+				} else {
+					candidates.add(remote);
+				}
+			}
+			T result;
+			if (raceRepositories && candidates.size() > 1) {
+				result = race(artifact, path, candidates, fetch);
+			} else {
+				result = lookup(artifact, path, candidates, fetch);
+			}
+			if (result == null) {
+				result = lookup(artifact, path, skipped, fetch);
+			}
+			if (result == null) {
+				throw new IllegalArgumentException("Download failed " + path);
+			}
+			return result;
+		}
+
+		private <T> T lookup(
+				Artifact artifact,
+				Path path,
+				List<String> remotes,
+				Function<String, T> fetch
+		) {
+			RepositoryCache cache = repositoryCache();
+			for (String remote : remotes) {
+				T result = fetch.apply(remote);
+				if (result != null) {
+					artifact.remote = remote;
+					cache.found(artifact, remote);
+					return result;
+				}
+				cache.missing(remote, path);
+			}
+			return null;
+		}
+
+		/**
+		 * Asks all repositories at once and takes the answer of the first one
+		 * in priority order that has the path. Slower repositories further down
+		 * the list are cancelled as soon as a winner is known. When saving to
+		 * the local repository only HEAD requests race so that a single
+		 * download is written to disk.
+		 */
+		private <T> T race(
+				Artifact artifact,
+				Path path,
+				List<String> remotes,
+				Function<String, T> fetch
+		) {
+			if (saveToLocalRepository) {
+				Map.Entry<String, String> winner = first(
+						path,
+						remotes,
+						remote -> exists(
+								remote,
+								remotePath(remote, artifact, path)
+						) ? remote : null
+				);
+				if (winner == null) {
+					return null;
+				}
+				return lookup(artifact, path, List.of(winner.getKey()), fetch);
+			}
+			Map.Entry<String, T> winner = first(path, remotes, fetch);
+			if (winner == null) {
+				return null;
+			}
+			artifact.remote = winner.getKey();
+			repositoryCache().found(artifact, winner.getKey());
+			return winner.getValue();
+		}
+
+		private <T> Map.Entry<String, T> first(
+				Path path,
+				List<String> remotes,
+				Function<String, T> fetch
+		) {
+			RepositoryCache cache = repositoryCache();
+			ExecutorService executor = executor();
+			List<Future<T>> futures = new ArrayList<>();
+			for (String remote : remotes) {
+				futures.add(executor.submit(() -> fetch.apply(remote)));
+			}
+			try {
+				for (int i = 0; i < remotes.size(); i++) {
+					Future<T> future = futures.get(i);
+					T result = result(future);
+					if (result != null) {
+						return Map.entry(remotes.get(i), result);
+					}
+					if (future.state() == Future.State.SUCCESS) {
+						cache.missing(remotes.get(i), path);
+					}
+				}
+				return null;
+			} finally {
+				for (Future<T> future : futures) {
+					future.cancel(true);
+				}
+			}
+		}
+
+		private static <T> T result(Future<T> future) {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				return null;
+			}
+		}
+
+		LocalIndex localIndex() {
+			Path file = cacheDirectory.resolve("index")
+					.resolve(
+							sha256(localRepository.toAbsolutePath().toString())
+									+ ".idx"
+					);
+			synchronized (this) {
+				if (localIndex == null) {
+					localIndex = LocalIndex.read(localRepository, file);
+				}
+				return localIndex;
+			}
+		}
+
+		/**
+		 * Takes the index and repository cache from instances in the same
+		 * process that use the same files, like the daemon's for different
+		 * arguments. Each would otherwise rewrite the whole file with only what
+		 * it knows.
+		 *
+		 * @return this
+		 */
+		Maven share(
+				Map<Path, LocalIndex> localIndexes,
+				Map<Path, RepositoryCache> repositoryCaches
+		) {
+			LocalIndex index = localIndex();
+			RepositoryCache cache = repositoryCache();
+			synchronized (this) {
+				localIndex = localIndexes.computeIfAbsent(
+						index.file.toAbsolutePath(),
+						file -> index
+				);
+				repositoryCache = repositoryCaches.computeIfAbsent(
+						cache.file.toAbsolutePath(),
+						file -> cache
+				);
+			}
+			return this;
+		}
+
+		RepositoryCache repositoryCache() {
+			Path file = cacheDirectory.resolve("repositories.tsv");
+			Duration ttl = missTtl;
+			synchronized (this) {
+				if (repositoryCache == null) {
+					repositoryCache = RepositoryCache.read(file, ttl);
+				}
+				return repositoryCache;
+			}
+		}
+
+		public InputStream inputStream(String remote, Path path) {
+			return get(uri(remote, path)).map(ByteArrayInputStream::new)
+					.orElse(null);
+		}
+
+		/**
+		 * Reads the jars of a class path in parallel, no more than
+		 * {@link #parallelism} at a time. Jars that were already downloaded by
+		 * {@link #uri(String, Path, Path)} are handed over instead of being
+		 * requested again.
+		 */
+		public List<byte[]> contents(URL... jars) {
+			List<Future<byte[]>> futures = new ArrayList<>();
+			for (URL jar : jars) {
+				if (parallelism > 1) {
+					futures.add(submitDownload(() -> content(jar)));
+				} else {
+					futures.add(
+							CompletableFuture.completedFuture(content(jar))
+					);
+				}
+			}
+			List<byte[]> contents = new ArrayList<>();
+			for (Future<byte[]> future : futures) {
+				try {
+					contents.add(future.get());
+				} catch (ExecutionException | InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return contents;
+		}
+
+		private byte[] content(URL jar) {
+			URI uri;
+			try {
+				uri = jar.toURI();
+			} catch (URISyntaxException e) {
+				throw new IllegalArgumentException(e);
+			}
+			byte[] content = contents.remove(uri);
+			if (content != null) {
+				return content;
+			}
+			if ("file".equals(uri.getScheme())) {
+				try {
+					return Files.readAllBytes(Path.of(uri));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return get(uri).orElseThrow(
+					() -> new IllegalArgumentException("Download failed " + uri)
+			);
+		}
+
+		private Optional<byte[]> get(URI uri) {
+			return verified(
+					uri,
+					verification -> fetch(uri, verification::found)
+							.map(content -> {
+								verification.digest.update(content);
+								return content;
+							})
+			);
+		}
+
+		/**
+		 * Fetches a file while its SHA-1 is computed and compares it with the
+		 * .sha1 sidecar. A mismatch is retried once before the download fails.
+		 * Files without a sidecar are accepted as they are.
+		 */
+		private <T> Optional<T> verified(
+				URI uri,
+				Function<Verification, Optional<T>> fetch
+		) {
+			Verification verification = new Verification(uri);
+			for (int attempt = 1;; attempt++) {
+				verification.digest.reset();
+				Optional<T> result = fetch.apply(verification);
+				if (result.isEmpty() || verification.notModified) {
+					return result;
+				}
+				String checksum = verification.expected();
+				String actual = HexFormat.of()
+						.formatHex(verification.digest.digest());
+				if (checksum == null || checksum.equalsIgnoreCase(actual)) {
+					if (checksum != null && !uri.getPath().contains("SNAPSHOT")
+							&& !uri.getPath().endsWith(METADATA)) {
+						repositoryCache().checksum(uri, checksum);
+					}
+					return result;
+				}
+				if (attempt == 2) {
+					throw new IllegalArgumentException(
+							"Checksum mismatch " + uri + " expected " + checksum
+									+ " but was " + actual
+					);
+				}
+			}
+		}
+
+		/**
+		 * The digest of one download and its expected value. That is known from
+		 * an earlier run or read from the sidecar, which is requested as soon
+		 * as the response headers show that the file exists. It arrives while
+		 * the body is still streaming in and misses cost no extra request.
+		 * Without parallelism it is requested afterwards.
+		 */
+		private final class Verification {
+
+			final MessageDigest digest = sha1();
+			boolean notModified;
+			private final URI uri;
+			private volatile Future<String> expected;
+
+			Verification(URI uri) {
+				this.uri = uri;
+			}
+
+			void found() {
+				if (parallelism > 1 && expected == null) {
+					expected = start();
+				}
+			}
+
+			String expected() {
+				if (expected == null) {
+					expected = CompletableFuture.completedFuture(sidecar());
+				}
+				return result(expected);
+			}
+
+			private Future<String> start() {
+				if (!verifyChecksums
+						|| repositoryCache().checksum(uri) != null) {
+					return CompletableFuture.completedFuture(sidecar());
+				}
+				return executor().submit(this::sidecar);
+			}
+
+			private String sidecar() {
+				if (!verifyChecksums) {
+					return null;
+				}
+				String cached = repositoryCache().checksum(uri);
+				if (cached != null) {
+					return cached;
+				}
+				return fetch(URI.create(uri + ".sha1"), () -> {
+				})
+						.map(
+								content -> new String(
+										content,
+										StandardCharsets.US_ASCII
+								).strip().split("\\s+")[0]
+						)
+						.filter(SHA1)
+						.orElse(null);
+			}
+
+		}
+
+		private static MessageDigest sha1() {
+			try {
+				return MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private Optional<byte[]> fetch(URI uri, Runnable found) {
+			try {
+				HttpResponse<byte[]> response = transport.send(
+						HttpRequest.newBuilder()
+								.uri(uri)
+								.timeout(Duration.ofMillis(TIMEOUT_MS))
+								.build(),
+						info -> {
+							if (info.statusCode() == 200) {
+								found.run();
+							}
+							return HttpResponse.BodySubscribers.ofByteArray();
+						}
+				);
+				if (response.statusCode() == 200) {
+					return Optional.of(response.body());
+				}
+			} catch (IOException | InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return Optional.empty();
+		}
+
+		public URI uri(String remote, Path path, Path absolutePath) {
+			try {
+				URI uri = uri(remote, path);
+				if (saveToLocalRepository) {
+					if (store(uri, absolutePath, isMutable(absolutePath))) {
+						return absolutePath.toUri();
+					}
+				} else {
+					Optional<byte[]> content = get(uri);
+					if (content.isPresent()) {
+						contents.put(uri, content.orElseThrow());
+						return uri;
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		}
+
+		/**
+		 * Downloads a verified file to the given path. Mutable files keep the
+		 * validators of their download and are only downloaded again if they
+		 * changed.
+		 *
+		 * @return whether the file exists remotely
+		 */
+		private boolean store(URI uri, Path absolutePath, boolean mutable)
+				throws IOException {
+			Path parent = absolutePath.getParent();
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+			Path temporary = Path.of(
+					absolutePath + "." + ProcessHandle.current().pid() + "-"
+							+ Thread.currentThread().threadId() + ".part"
+			);
+			Map<String, String> validators = mutable
+					&& Files.exists(absolutePath) ? readValidators(absolutePath)
+							: Map.of();
+			try {
+				Optional<HttpResponse<Path>> response = verified(
+						uri,
+						verification -> save(
+								uri,
+								validators,
+								temporary,
+								verification
+						)
+				);
+				if (response.isEmpty()) {
+					return false;
+				}
+				if (response.orElseThrow().statusCode() == 200) {
+					Files.move(
+							temporary,
+							absolutePath,
+							StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE
+					);
+					if (mutable) {
+						writeValidators(
+								absolutePath,
+								response.orElseThrow().headers()
+						);
+					}
+				}
+				return true;
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+		}
+
+		/**
+		 * Downloads a file, conditionally if validators from an earlier
+		 * download are given.
+		 *
+		 * @return the response if the file was downloaded or is not modified
+		 */
+		private Optional<HttpResponse<Path>> save(
+				URI uri,
+				Map<String, String> validators,
+				Path file,
+				Verification verification
+		) {
+			HttpRequest.Builder request = HttpRequest.newBuilder()
+					.uri(uri)
+					.timeout(Duration.ofMillis(TIMEOUT_MS));
+			validators.forEach(
+					(name, value) -> request.header(
+							"ETag".equals(name) ? "If-None-Match"
+									: "If-Modified-Since",
+							value
+					)
+			);
+			try {
+				HttpResponse<Path> response = transport
+						.send(request.build(), info -> {
+							if (info.statusCode() != 200) {
+								return HttpResponse.BodySubscribers
+										.replacing(null);
+							}
+							verification.found();
+							return new DigestSubscriber<>(
+									HttpResponse.BodySubscribers.ofFile(file),
+									verification.digest
+							);
+						});
+				if (response.statusCode() == 304) {
+					verification.notModified = true;
+				}
+				if (response.statusCode() == 200
+						|| response.statusCode() == 304) {
+					return Optional.of(response);
+				}
+				return Optional.empty();
+			} catch (IOException | InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private URI revalidate(
+				Artifact artifact,
+				Path path,
+				Path absolutePath
+		) {
+			try {
+				return remote(
+						artifact,
+						path,
+						remote -> uri(
+								remote,
+								remotePath(remote, artifact, path),
+								absolutePath
+						)
+				);
+			} catch (IllegalArgumentException | IllegalStateException e) {
+				// no repository answered, the last download will do
+				return absolutePath.toUri();
+			}
+		}
+
+		/**
+		 * Snapshots can change under the same path, so files of snapshot
+		 * versions keep the validators of their download and are revalidated.
+		 * Releases never are.
+		 */
+		static boolean isMutable(Path file) {
+			Path version = file.getParent();
+			Path name = version == null ? null : version.getFileName();
+			return name != null && name.toString().endsWith("-SNAPSHOT");
+		}
+
+		private boolean revalidates(Path file) {
+			return saveToLocalRepository && isMutable(file)
+					&& Files.exists(validators(file));
+		}
+
+		private static Path validators(Path file) {
+			return file.resolveSibling(file.getFileName() + ".validators");
+		}
+
+		private static Map<String, String> readValidators(Path file) {
+			Map<String, String> validators = new LinkedHashMap<>();
+			try {
+				for (String line : Files.readAllLines(
+						validators(file),
+						StandardCharsets.UTF_8
+				)) {
+					int colon = line.indexOf(':');
+					if (colon > 0) {
+						validators.put(
+								line.substring(0, colon),
+								line.substring(colon + 1).strip()
+						);
+					}
+				}
+			} catch (IOException e) {
+				return Map.of();
+			}
+			return validators;
+		}
+
+		private static void writeValidators(Path file, HttpHeaders headers)
+				throws IOException {
+			List<String> lines = new ArrayList<>();
+			headers.firstValue("ETag")
+					.ifPresent(etag -> lines.add("ETag: " + etag));
+			headers.firstValue("Last-Modified")
+					.ifPresent(
+							lastModified -> lines
+									.add("Last-Modified: " + lastModified)
+					);
+			if (lines.isEmpty()) {
+				Files.deleteIfExists(validators(file));
+			} else {
+				Files.write(validators(file), lines, StandardCharsets.UTF_8);
+			}
+		}
+
+		/**
+		 * Picks the version LATEST, RELEASE or a version range stands for from
+		 * the maven-metadata.xml of every repository.
+		 */
+		public String version(Artifact artifact) {
+			Path directory = Path.of(artifact.groupId.replace(".", "/"))
+					.resolve(artifact.artifactId);
+			return stats.time(
+					"metadata",
+					artifact.groupId + ":" + artifact.artifactId,
+					() -> {
+						List<Metadata> metadata = new ArrayList<>();
+						for (String remote : repositories) {
+							Metadata found = metadata(remote, directory);
+							if (found != null) {
+								metadata.add(found);
+							}
+						}
+						String version = VersionRange
+								.select(artifact.version, metadata);
+						if (version == null) {
+							throw new IllegalArgumentException(
+									"No version of " + artifact.groupId + ":"
+											+ artifact.artifactId + " matches "
+											+ artifact.version
+							);
+						}
+						return version;
+					}
+			);
+		}
+
+		/**
+		 * The path of a file in the given repository. Snapshots deployed with a
+		 * timestamp are looked up in the maven-metadata.xml of their version
+		 * and are saved under their -SNAPSHOT name.
+		 */
+		private Path remotePath(String remote, Artifact artifact, Path path) {
+			if (!artifact.isSnapshot()) {
+				return path;
+			}
+			Path directory = Path.of(artifact.groupId.replace(".", "/"))
+					.resolve(artifact.artifactId)
+					.resolve(artifact.version);
+			String prefix = artifact.artifactId + "-" + artifact.version + ".";
+			String name = String.valueOf(path.getFileName());
+			if (!name.startsWith(prefix)) {
+				return path;
+			}
+			String extension = name.substring(prefix.length());
+			Metadata metadata = stats.time(
+					"metadata",
+					artifact.coordinates(),
+					() -> metadata(remote, directory)
+			);
+			String version = metadata == null ? null
+					: metadata.snapshotVersion(artifact.version, extension);
+			if (version == null) {
+				return path;
+			}
+			return directory.resolve(
+					artifact.artifactId + "-" + version + "." + extension
+			);
+		}
+
+		/**
+		 * The maven-metadata.xml of a directory in the given repository from
+		 * the cache directory. It is downloaded again, conditionally, once it
+		 * is older than the {@link #updatePolicy} allows and kept if the
+		 * repository cannot be reached. The parsed file is kept until it
+		 * changes, as every file of a snapshot looks it up.
+		 *
+		 * @return the metadata or null if the repository has none
+		 */
+		private Metadata metadata(String remote, Path directory) {
+			Path path = directory.resolve(METADATA);
+			Path cached = cacheDirectory.resolve("metadata")
+					.resolve(sha256(remote))
+					.resolve(directory);
+			Path file = cached.resolve(METADATA);
+			FileTime modified = lastModified(file);
+			if ((modified == null || !isFresh(modified)) && !repositoryCache()
+					.isMissing(remote, path, metadataTtl())) {
+				try {
+					Files.createDirectories(cached);
+					if (store(uri(remote, path), file, true)) {
+						Files.setLastModifiedTime(
+								file,
+								FileTime.from(Instant.now())
+						);
+					} else {
+						repositoryCache().missing(remote, path);
+						Files.deleteIfExists(file);
+					}
+				} catch (IOException | IllegalArgumentException
+						| IllegalStateException e) {
+					// the repository is unreachable, the last copy will do
+				}
+				modified = lastModified(file);
+			}
+			if (modified == null) {
+				return null;
+			}
+			Map.Entry<FileTime, Metadata> parsed = parsedMetadata.get(file);
+			if (parsed != null && parsed.getKey().equals(modified)) {
+				return parsed.getValue();
+			}
+			try (InputStream content = Files.newInputStream(file)) {
+				Metadata metadata = PomReader.readMetadata(content);
+				parsedMetadata.put(file, Map.entry(modified, metadata));
+				return metadata;
+			} catch (IOException | IllegalStateException e) {
+				return null;
+			}
+		}
+
+		private static FileTime lastModified(Path file) {
+			try {
+				return Files.getLastModifiedTime(file);
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * A repository without the metadata is asked again as soon as the
+		 * {@link #updatePolicy} would check metadata it has.
+		 */
+		private Duration metadataTtl() {
+			Duration interval = updateInterval(updatePolicy);
+			return interval.compareTo(missTtl) < 0 ? interval : missTtl;
+		}
+
+		private boolean isFresh(FileTime modified) {
+			Duration age = Duration
+					.between(modified.toInstant(), Instant.now());
+			return age.compareTo(updateInterval(updatePolicy)) < 0;
+		}
+
+		/**
+		 * How long metadata is used before it is checked again, for the update
+		 * policies always, daily, never and interval:minutes like Maven's.
+		 */
+		public static Duration updateInterval(String policy) {
+			switch (policy) {
+			case "always":
+				return Duration.ZERO;
+			case "daily":
+				return Duration.ofDays(1);
+			case "never":
+				return ChronoUnit.FOREVER.getDuration();
+			default:
+				if (policy.startsWith("interval:")) {
+					return Duration.ofMinutes(
+							Long.parseLong(
+									policy.substring("interval:".length())
+							)
+					);
+				}
+				throw new IllegalArgumentException(
+						"Unknown update policy " + policy
+				);
+			}
+		}
+
+		public boolean exists(String remote, Path path) {
+			try {
+				HttpResponse<Void> response = transport.send(
+						HttpRequest.newBuilder()
+								.uri(uri(remote, path))
+								.timeout(Duration.ofMillis(TIMEOUT_MS))
+								.method("HEAD", BodyPublishers.noBody())
+								.build(),
+						HttpResponse.BodyHandlers.discarding()
+				);
+				return response.statusCode() == 200;
+			} catch (IOException | InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private static URI uri(String remote, Path path) {
+			return URI.create(remote)
+					.resolve(path.toString().replace('\\', '/'));
+		}
+
+		/**
+		 * Feeds every buffer of a response body into a digest on its way to the
+		 * actual subscriber, so the body is hashed while it is written.
+		 */
+		private static final class DigestSubscriber<T>
+				implements HttpResponse.BodySubscriber<T> {
+
+			private final HttpResponse.BodySubscriber<T> delegate;
+			private final MessageDigest digest;
+
+			DigestSubscriber(
+					HttpResponse.BodySubscriber<T> delegate,
+					MessageDigest digest
+			) {
+				this.delegate = delegate;
+				this.digest = digest;
+			}
+
+			@Override
+			public CompletionStage<T> getBody() {
+				return delegate.getBody();
+			}
+
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				delegate.onSubscribe(subscription);
+			}
+
+			@Override
+			public void onNext(List<ByteBuffer> items) {
+				for (ByteBuffer item : items) {
+					digest.update(item.duplicate());
+				}
+				delegate.onNext(items);
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				delegate.onError(throwable);
+			}
+
+			@Override
+			public void onComplete() {
+				delegate.onComplete();
+			}
+
+		}
+
+		public Path localRepository(Path userHomeM2, Path settingsXml) {
+			if (Files.exists(settingsXml)) {
+				String localRepository;
+				try {
+					localRepository = PomReader.readElement(
+							Files.newInputStream(settingsXml),
+							"localRepository"
+					);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				if (localRepository != null && !localRepository.isBlank()) {
+					return Path.of(
+							template(
+									localRepository,
+									Maven::lookupSystemPropertyOrEnvironmentVariable
+							)
+					);
+				}
+			}
+			return userHomeM2.resolve("repository");
+		}
+
+		public void resolve(
+				Artifact artifact,
+				List<Artifact> artifacts,
+				Predicate<Artifact> filter
+		) {
+			resolve(
+					artifact,
+					artifacts,
+					filter,
+					new HashMap<>(),
+					new HashMap<>(),
+					0,
+					true
+			);
+		}
+
+		/**
+		 * Resolves every dependency GAV once per top level resolve, keyed by
+		 * the version a range or LATEST/RELEASE selected. Later occurrences
+		 * share the parent, dependencies and properties of the first one, which
+		 * also ends dependency cycles. Jars are only fetched in advance for
+		 * artifacts that can still win the mediation in
+		 * {@link Artifact#classPath(Predicate, Map)}, see
+		 * {@link #mayWin(Artifact, int, Map)}.
+		 */
+		private void resolve(
+				Artifact artifact,
+				List<Artifact> artifacts,
+				Predicate<Artifact> filter,
+				Map<List<String>, Artifact> resolved,
+				Map<List<String>, Map.Entry<Integer, String>> nearest,
+				int depth,
+				boolean download
+		) {
+			if (VersionRange.isDynamic(artifact.version)) {
+				artifact.version = version(artifact);
+			}
+			List<Artifact> artifactHierarchy = new ArrayList<>(artifacts);
+			artifactHierarchy.add(artifact);
+
+			Artifact model = pom(artifact);
+
+			if (model.parent != null) {
+				Artifact parent = model.parent.copy();
+				parent.packaging = "pom";
+				resolve(
+						parent,
+						artifactHierarchy,
+						filter,
+						resolved,
+						nearest,
+						depth,
+						download
+				);
+				artifact.parent = parent;
+				if (artifact.version == null) {
+					artifact.version = artifact.parent.version;
+					artifact.properties
+							.put("project.version", artifact.version);
+				}
+				if (artifact.groupId == null) {
+					artifact.groupId = artifact.parent.groupId;
+				}
+			}
+			if (model.groupId != null) {
+				artifact.groupId = model.groupId;
+			}
+			if (model.artifactId != null) {
+				artifact.artifactId = model.artifactId;
+			}
+			if (model.version != null) {
+				artifact.version = model.version;
+				artifact.properties.put("project.version", artifact.version);
+			}
+			if (model.packaging != null) {
+				artifact.packaging = model.packaging;
+			}
+			if (filter.test(artifact)) {
+				download = download && mayWin(artifact, depth, nearest);
+				if (download) {
+					download(artifact);
+				}
+			}
+			artifact.properties.putAll(model.properties);
+			PropertyScope properties = new PropertyScope(
+					key -> lookupProperty(key, artifactHierarchy)
+			);
+
+			List<Artifact> managed = new ArrayList<>();
+			for (Artifact declared : model.dependencyManagement) {
+				Artifact dependency = declared.copy();
+				resolveProperties(dependency, properties);
+				if ("import".equals(dependency.scope)) {
+					prefetch(dependency);
+				}
+				managed.add(dependency);
+			}
+			for (Artifact dependency : managed) {
+				if ("import".equals(dependency.scope)) {
+					resolve(
+							dependency,
+							artifactHierarchy,
+							filter,
+							resolved,
+							nearest,
+							depth,
+							download
+					);
+					artifact.dependencyManagement
+							.addAll(dependency.dependencyManagement);
+				} else {
+					artifact.dependencyManagement.add(dependency);
+				}
+			}
+
+			for (Artifact declared : model.dependencies) {
+				artifact.dependencies.add(declared.copy());
+			}
+
+			for (Artifact dependency : artifact.dependencies) {
+				prefetch(dependency, artifactHierarchy, properties, filter);
+			}
+
+			for (Artifact dependency : artifact.dependencies) {
+				if (filter.test(dependency)) {
+					resolveProperties(dependency, properties);
+					if (filter.test(dependency)) {
+						stats.time(
+								"manage",
+								null,
+								() -> manage(dependency, artifactHierarchy)
+						);
+						if (filter.test(dependency)) {
+							// ranges that select the same version share it
+							if (VersionRange.isDynamic(dependency.version)) {
+								dependency.version = version(dependency);
+							}
+							Artifact first = resolved.putIfAbsent(
+									Arrays.asList(
+											dependency.groupId,
+											dependency.artifactId,
+											dependency.version,
+											dependency.classifier,
+											dependency.packaging
+									),
+									dependency
+							);
+							if (first == null) {
+								resolve(
+										dependency,
+										artifactHierarchy,
+										filter,
+										resolved,
+										nearest,
+										depth + 1,
+										download
+								);
+							} else {
+								dependency.share(first);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		public static void manage(
+				Artifact artifact,
+				List<Artifact> dependents
+		) {
+			String version = null;
+			String scope = null;
+			List<String> key = Artifact.managementKey(artifact);
+			for (Artifact dependent : dependents) {
+				for (Artifact pom : dependent.hierarchy()) {
+					for (Artifact dependency : pom.dependencies) {
+						if (artifact.equalsArtifact(dependency)) {
+							if (version == null) {
+								version = dependency.version;
+							}
+							if (scope == null) {
+								scope = dependency.scope;
+							}
+						}
+					}
+					Artifact managed = pom.management().get(key);
+					if (managed != null) {
+						if (version == null) {
+							version = managed.version;
+						}
+						if (scope == null) {
+							scope = managed.scope;
+						}
+					}
+					if (version != null && scope != null) {
+						break;
+					}
+				}
+				if (version != null && scope != null) {
+					break;
+				}
+			}
+			if (version != null) {
+				artifact.version = version;
+			}
+			if (scope == null) {
+				scope = "compile";
+			}
+			artifact.scope = scope;
+		}
+
+		public static String sha256(String text) {
+			try {
+				return HexFormat.of()
+						.formatHex(
+								MessageDigest.getInstance(
+										"SHA-256"
+								).digest(text.getBytes(StandardCharsets.UTF_8))
+						);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		public static Path userHomeM2(Path userHome) {
+			return userHome.resolve(".m2");
+		}
+
+		public static Path settingsXml(Path userHomeM2) {
+			return userHomeM2.resolve("settings.xml");
+		}
+
+		public static String lookupSystemPropertyOrEnvironmentVariable(
+				String key
+		) {
+			return Optional.ofNullable(System.getProperty(key))
+					.orElseGet(
+							() -> System.getenv(key.substring("env.".length()))
+					);
+		}
+
+		/**
+		 * Looks a property up in each artifact and its parents in turn. An
+		 * artifact with a parent falls back to system properties and
+		 * environment variables before the next artifact is asked.
+		 */
+		public static String lookupProperty(
+				String key,
+				List<Artifact> artifacts
+		) {
+			for (Artifact artifact : artifacts) {
+				for (Artifact pom = artifact; pom != null; pom = pom.parent) {
+					String value = pom.properties.get(key);
+					if (value != null) {
+						return value;
+					}
+				}
+				if (artifact.parent != null) {
+					String value = lookupSystemPropertyOrEnvironmentVariable(
+							key
+					);
+					if (value != null) {
+						return value;
+					}
+				}
+			}
+			return lookupSystemPropertyOrEnvironmentVariable(key);
+		}
+
+		public static void resolveProperties(
+				Artifact artifact,
+				Function<String, String> lookupFunction
+		) {
+			resolveProperties(artifact, new PropertyScope(lookupFunction));
+		}
+
+		public static void resolveProperties(
+				Artifact artifact,
+				PropertyScope properties
+		) {
+			artifact.groupId = properties.template(artifact.groupId);
+			artifact.artifactId = properties.template(artifact.artifactId);
+			artifact.version = properties.template(artifact.version);
+			artifact.classifier = properties.template(artifact.classifier);
+			artifact.packaging = properties.template(artifact.packaging);
+			artifact.scope = properties.template(artifact.scope);
+		}
+
+		public static String template(
+				String text,
+				Function<String, String> lookupFunction
+		) {
+			return new PropertyScope(lookupFunction).template(text);
+		}
+
+		public static Path path(Artifact dependency, String extension) {
+			if (dependency.groupId == null) {
+				throw new IllegalStateException("groupId is null");
+			}
+			return Path.of(dependency.groupId.replace(".", "/"))
+					.resolve(dependency.artifactId)
+					.resolve(dependency.version)
+					.resolve(
+							dependency.artifactId + "-" + dependency.version
+									+ "." + extension
+					);
+		}
+
+	}
+
+	/**
+	 * Classpath and main class of a resolved artifact in a plain text file: the
+	 * main class on the first line (empty if unknown) followed by one jar URL
+	 * per line.
+	 */
+	public static class Lockfile {
+
+		String mainClass;
+		URL[] jars = new URL[0];
+
+		public static Lockfile read(Path path) {
+			if (!Files.isRegularFile(path)) {
+				return null;
+			}
+			try {
+				return parse(Files.readAllLines(path, StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * @return the lockfile or null if the lines do not describe a usable
+		 *         one
+		 */
+		public static Lockfile parse(List<String> lines) {
+			if (lines.isEmpty()) {
+				return null;
+			}
+			try {
+				Lockfile lockfile = new Lockfile();
+				lockfile.jars = new URL[lines.size() - 1];
+				for (int i = 1; i < lines.size(); i++) {
+					lockfile.jars[i - 1] = URI.create(lines.get(i)).toURL();
+				}
+				if (!lines.get(0).isEmpty()) {
+					lockfile.mainClass = lines.get(0);
+				}
+				return lockfile;
+			} catch (IOException | IllegalArgumentException e) {
+				return null;
+			}
+		}
+
+		public List<String> lines() {
+			List<String> lines = new ArrayList<>();
+			lines.add(mainClass == null ? "" : mainClass);
+			for (URL jar : jars) {
+				lines.add(jar.toExternalForm());
+			}
+			return lines;
+		}
+
+		public void write(Path path) {
+			try {
+				writeLines(path, lines());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+	}
+
+	/**
+	 * Keeps parsed POMs, repository connections and the repository cache warm
+	 * between launches. Clients send one request per connection over a Unix
+	 * domain socket: the command on the first line followed by its arguments,
+	 * one per line. The response starts with ok or error. A resolve request
+	 * carries the arguments that influence resolution and is answered with the
+	 * lines of a {@link Lockfile}. Every combination of those arguments gets
+	 * its own {@link Maven}, whose resolutions run one at a time. Snapshot POMs
+	 * are dropped after each of them. The daemon stops once no request arrived
+	 * for the idle timeout.
+	 */
+	public static final class Daemon implements AutoCloseable {
+
+		private final Path socket;
+		private final Duration idleTimeout;
+		private final ServerSocketChannel server;
+		private final Map<List<String>, Maven> mavens = new ConcurrentHashMap<>();
+		private final Map<Maven, Lock> locks = new ConcurrentHashMap<>();
+		private final Map<Path, LocalIndex> localIndexes = new ConcurrentHashMap<>();
+		private final Map<Path, RepositoryCache> repositoryCaches = new ConcurrentHashMap<>();
+		private final AtomicInteger active = new AtomicInteger();
+		private volatile long lastRequest = System.nanoTime();
+
+		public Daemon(Path socket, Duration idleTimeout) throws IOException {
+			this.socket = socket;
+			this.idleTimeout = idleTimeout;
+			if (send(socket, List.of("ping")).isPresent()) {
+				throw new IllegalStateException(
+						"A daemon is already listening on " + socket
+				);
+			}
+			Files.deleteIfExists(socket);
+			Path parent = socket.toAbsolutePath().getParent();
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			server.bind(UnixDomainSocketAddress.of(socket));
+		}
+
+		/**
+		 * Accepts requests until the daemon is stopped or idle.
+		 */
+		public void run() throws IOException {
+			Thread idle = Thread.ofVirtual().start(this::stopWhenIdle);
+			try (ExecutorService executor = Executors
+					.newVirtualThreadPerTaskExecutor()) {
+				while (server.isOpen()) {
+					SocketChannel channel;
+					try {
+						channel = server.accept();
+					} catch (ClosedChannelException e) {
+						break;
+					}
+					active.incrementAndGet();
+					lastRequest = System.nanoTime();
+					executor.execute(() -> serve(channel));
+				}
+			} finally {
+				idle.interrupt();
+				close();
+			}
+		}
+
+		public Map<List<String>, Maven> mavens() {
+			return Map.copyOf(mavens);
+		}
+
+		@Override
+		public void close() throws IOException {
+			server.close();
+			Files.deleteIfExists(socket);
+		}
+
+		private void stopWhenIdle() {
+			try {
+				while (server.isOpen()) {
+					long idleNanos = System.nanoTime() - lastRequest;
+					if (active.get() == 0
+							&& idleNanos >= idleTimeout.toNanos()) {
+						server.close();
+						return;
+					}
+					Thread.sleep(
+							Math.max(
+									1,
+									(idleTimeout.toNanos() - idleNanos)
+											/ 1_000_000
+							)
+					);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private void serve(SocketChannel channel) {
+			try (channel) {
+				List<String> request = read(channel);
+				List<String> response;
+				try {
+					response = new ArrayList<>();
+					response.add("ok");
+					response.addAll(handle(request));
+				} catch (RuntimeException e) {
+					response = List.of("error", String.valueOf(e.getMessage()));
+				}
+				write(channel, response);
+			} catch (IOException e) {
+				// the client went away, there is nobody left to tell
+			} finally {
+				lastRequest = System.nanoTime();
+				active.decrementAndGet();
+			}
+		}
+
+		private List<String> handle(List<String> request) throws IOException {
+			switch (request.isEmpty() ? "" : request.get(0)) {
+			case "ping":
+				return List.of();
+			case "resolve":
+				MavenExecutor executor = new MavenExecutor().parseArguments(
+						request.subList(1, request.size())
+								.toArray(String[]::new)
+				);
+				Maven maven = mavens.computeIfAbsent(
+						List.copyOf(request.subList(2, request.size())),
+						key -> executor.maven
+								.share(localIndexes, repositoryCaches)
+				);
+				executor.maven = maven;
+				// a monitor would pin the carrier while resolve waits for
+				// downloads on other virtual threads
+				Lock lock = locks
+						.computeIfAbsent(maven, key -> new ReentrantLock());
+				lock.lock();
+				try {
+					Path path = executor.lockfile();
+					Lockfile lockfile = executor.resolve(path);
+					// the index outlives the jars it knows, the client would
+					// find a deleted one only after the daemon answered
+					if (executor.forgetMissingJars(lockfile.jars)) {
+						executor.artifact = executor.artifact.copy();
+						lockfile = executor.resolve(path);
+					}
+					return lockfile.lines();
+				} finally {
+					maven.contents.clear();
+					// snapshots are revalidated by the next request
+					maven.removeSnapshots();
+					lock.unlock();
+				}
+			case "invalidate":
+				int size = mavens.size();
+				mavens.clear();
+				locks.clear();
+				localIndexes.clear();
+				repositoryCaches.clear();
+				return List.of("Invalidated " + size + " caches");
+			case "stop":
+				server.close();
+				return List.of("Stopped");
+			default:
+				throw new IllegalArgumentException(
+						"Unknown command " + request
+				);
+			}
+		}
+
+		/**
+		 * @return the response of the daemon or nothing if none is listening
+		 * @throws IllegalStateException if the daemon failed to handle the
+		 *                               request
+		 */
+		public static Optional<List<String>> send(
+				Path socket,
+				List<String> request
+		) {
+			if (!Files.exists(socket)) {
+				return Optional.empty();
+			}
+			List<String> response;
+			try (SocketChannel channel = SocketChannel
+					.open(UnixDomainSocketAddress.of(socket))) {
+				write(channel, request);
+				channel.shutdownOutput();
+				response = read(channel);
+			} catch (IOException e) {
+				return Optional.empty();
+			}
+			if (response.isEmpty()) {
+				return Optional.empty();
+			}
+			if (!"ok".equals(response.get(0))) {
+				throw new IllegalStateException(
+						String.join(" ", response.subList(1, response.size()))
+				);
+			}
+			return Optional.of(response.subList(1, response.size()));
+		}
+
+		private static List<String> read(SocketChannel channel)
+				throws IOException {
+			return new String(
+					Channels.newInputStream(channel).readAllBytes(),
+					StandardCharsets.UTF_8
+			).lines().toList();
+		}
+
+		private static void write(SocketChannel channel, List<String> lines)
+				throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(
+					String.join("\n", lines)
+							.concat("\n")
+							.getBytes(StandardCharsets.UTF_8)
+			);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+
+	}
+
+	/**
+	 * Where a launch spends its time: the wall time and count of each phase,
+	 * requests and bytes per repository, cache hits and the artifacts whose POM
+	 * or file took longest to fetch. Phases that run on several threads at once
+	 * (pom, parse, manage and download) report the sum over all threads. Every
+	 * timed phase and every request is also recorded as a JFR event.
+	 */
+	public static class Stats {
+
+		static final List<String> PHASES = List.of(
+				"settings",
+				"daemon",
+				"resolve",
+				"metadata",
+				"pom",
+				"parse",
+				"manage",
+				"download",
+				"classpath",
+				"bundle",
+				"warmup",
+				"classload"
+		);
+		private static final int SLOWEST = 10;
+
+		private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+		private final Map<String, LongAdder> nanos = new ConcurrentHashMap<>();
+		private final Map<String, LongAccumulator> artifacts = new ConcurrentHashMap<>();
+		volatile boolean lockfile;
+		volatile long warmUpWait;
+		/**
+		 * The jars the warm-up had open before the main method started.
+		 */
+		volatile int warmJars;
+
+		public Timer time(String phase, String artifact) {
+			return new Timer(phase, artifact);
+		}
+
+		/**
+		 * Measures the body as one phase, optionally on behalf of an artifact.
+		 *
+		 * @return what the body returned
+		 */
+		public <T, E extends Exception> T time(
+				String phase,
+				String artifact,
+				Timed<T, E> body
+		) throws E {
+			Timer timer = new Timer(phase, artifact);
+			try {
+				return body.call();
+			} finally {
+				timer.close();
+			}
+		}
+
+		public void time(String phase, String artifact, Runnable body) {
+			time(phase, artifact, () -> {
+				body.run();
+				return null;
+			});
+		}
+
+		public long count(String phase) {
+			LongAdder count = counts.get(phase);
+			return count == null ? 0 : count.sum();
+		}
+
+		public double millis(String phase) {
+			LongAdder total = nanos.get(phase);
+			return total == null ? 0 : total.sum() / 1_000_000d;
+		}
+
+		/**
+		 * An estimate, not a measurement: opening the jars one after another is
+		 * assumed to take as long as the warm-up did in total, of which only
+		 * the time the main thread still had to wait for it was spent.
+		 */
+		public double warmUpEstimatedSaving() {
+			if (count("warmup") == 0) {
+				return 0;
+			}
+			return Math.max(0, millis("warmup") - warmUpWait / 1_000_000d);
+		}
+
+		public List<Map.Entry<String, Double>> slowest() {
+			return artifacts.entrySet()
+					.stream()
+					.sorted(
+							Comparator.comparingLong(
+									(
+											Map.Entry<String, LongAccumulator> entry) -> entry
+													.getValue()
+													.get()
+							).reversed()
+					)
+					.limit(SLOWEST)
+					.map(
+							entry -> Map.entry(
+									entry.getKey(),
+									entry.getValue().get() / 1_000_000d
+							)
+					)
+					.toList();
+		}
+
+		public String report(Maven maven) {
+			StringBuilder report = new StringBuilder();
+			report.append(
+					String.format(
+							Locale.ROOT,
+							"%-40s %10s %12s%n",
+							"Phase",
+							"Count",
+							"Time (ms)"
+					)
+			);
+			for (String phase : PHASES) {
+				report.append(
+						String.format(
+								Locale.ROOT,
+								"%-40s %10d %12.1f%n",
+								phase,
+								count(phase),
+								millis(phase)
+						)
+				);
+			}
+			report.append(
+					String.format(
+							Locale.ROOT,
+							"%-40s %10s %12s %12s%n",
+							"Repository",
+							"Requests",
+							"~Connections",
+							"Bytes"
+					)
+			);
+			maven.transport.origins()
+					.forEach(
+							(origin, counters) -> report.append(
+									String.format(
+											Locale.ROOT,
+											"%-40s %10d %12d %12d%n",
+											origin,
+											counters.requests.get(),
+											counters.estimatedConnections(),
+											counters.bytes.get()
+									)
+							)
+					);
+			report.append(
+					String.format(
+							Locale.ROOT,
+							"%-40s %10d %12d%n",
+							"Total (connections estimated)",
+							maven.transport.requests(),
+							maven.transport.estimatedConnections()
+					)
+			);
+			report.append(
+					String.format(
+							Locale.ROOT,
+							"Lockfile %s, POM cache %d hits %d misses%n",
+							lockfile ? "hit" : "miss",
+							maven.pomCache.hits(),
+							maven.pomCache.misses()
+					)
+			);
+			if (count("warmup") > 0) {
+				report.append(
+						String.format(
+								Locale.ROOT,
+								"Warm-up saved an estimated %.1f ms of %.1f ms opening %d of %d jars%n",
+								warmUpEstimatedSaving(),
+								millis("warmup"),
+								warmJars,
+								count("warmup")
+						)
+				);
+			}
+			report.append("Slowest artifacts (ms)")
+					.append(System.lineSeparator());
+			for (Map.Entry<String, Double> artifact : slowest()) {
+				report.append(
+						String.format(
+								Locale.ROOT,
+								"%12.1f  %s%n",
+								artifact.getValue(),
+								artifact.getKey()
+						)
+				);
+			}
+			return report.toString();
+		}
+
+		public String json(Maven maven) {
+			StringBuilder json = new StringBuilder("{\"lockfile\":")
+					.append(lockfile)
+					.append(",\"pomCache\":{\"hits\":")
+					.append(maven.pomCache.hits())
+					.append(",\"misses\":")
+					.append(maven.pomCache.misses())
+					.append("},\"phases\":{");
+			for (int i = 0; i < PHASES.size(); i++) {
+				String phase = PHASES.get(i);
+				json.append(i == 0 ? "" : ",")
+						.append(quote(phase))
+						.append(":{\"count\":")
+						.append(count(phase))
+						.append(",\"millis\":")
+						.append(
+								String.format(
+										Locale.ROOT,
+										"%.3f",
+										millis(phase)
+								)
+						)
+						.append("}");
+			}
+			json.append("},\"warmUpEstimatedSavingMillis\":")
+					.append(
+							String.format(
+									Locale.ROOT,
+									"%.3f",
+									warmUpEstimatedSaving()
+							)
+					)
+					.append(",\"requests\":")
+					.append(maven.transport.requests())
+					.append(",\"estimatedConnections\":")
+					.append(maven.transport.estimatedConnections())
+					.append(",\"repositories\":{");
+			String separator = "";
+			for (Map.Entry<String, Transport.Origin> origin : maven.transport
+					.origins()
+					.entrySet()) {
+				json.append(separator)
+						.append(quote(origin.getKey()))
+						.append(":{\"requests\":")
+						.append(origin.getValue().requests.get())
+						.append(",\"estimatedConnections\":")
+						.append(origin.getValue().estimatedConnections())
+						.append(",\"bytes\":")
+						.append(origin.getValue().bytes.get())
+						.append("}");
+				separator = ",";
+			}
+			json.append("},\"slowest\":[");
+			separator = "";
+			for (Map.Entry<String, Double> artifact : slowest()) {
+				json.append(separator)
+						.append("{\"artifact\":")
+						.append(quote(artifact.getKey()))
+						.append(",\"millis\":")
+						.append(
+								String.format(
+										Locale.ROOT,
+										"%.3f",
+										artifact.getValue()
+								)
+						)
+						.append("}");
+				separator = ",";
+			}
+			return json.append("]}").toString();
+		}
+
+		private static String quote(String text) {
+			return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"")
+					+ "\"";
+		}
+
+		/**
+		 * A body measured by {@link Stats#time(String, String, Timed)}.
+		 */
+		@FunctionalInterface
+		public interface Timed<T, E extends Exception> {
+
+			T call() throws E;
+
+		}
+
+		/**
+		 * Measures one phase, optionally on behalf of an artifact, from its
+		 * creation until it is closed.
+		 */
+		public final class Timer implements AutoCloseable {
+
+			private final String phase;
+			private final String artifact;
+			private final PhaseEvent event = new PhaseEvent();
+			private final long start = System.nanoTime();
+
+			private Timer(String phase, String artifact) {
+				this.phase = phase;
+				this.artifact = artifact;
+				event.begin();
+			}
+
+			@Override
+			public void close() {
+				long elapsed = System.nanoTime() - start;
+				counts.computeIfAbsent(phase, key -> new LongAdder())
+						.increment();
+				nanos.computeIfAbsent(phase, key -> new LongAdder())
+						.add(elapsed);
+				if (artifact != null) {
+					artifacts
+							.computeIfAbsent(
+									artifact,
+									key -> new LongAccumulator(Math::max, 0)
+							)
+							.accumulate(elapsed);
+				}
+				event.phase = phase;
+				event.artifact = artifact;
+				event.commit();
+			}
+
+		}
+
+	}
+
+	@Name("io.github.arlol.mvnx.Phase")
+	@Label("Phase")
+	@Category("mvnx")
+	public static class PhaseEvent extends Event {
+
+		@Label("Phase")
+		String phase;
+
+		@Label("Artifact")
+		String artifact;
+
+	}
+
+	@Name("io.github.arlol.mvnx.Request")
+	@Label("Repository Request")
+	@Category("mvnx")
+	public static class RequestEvent extends Event {
+
+		@Label("Method")
+		String method;
+
+		@Label("URI")
+		String uri;
+
+		@Label("Status")
+		int status;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+
+	}
+
+	/**
+	 * Serves classes and resources from jars held in memory so that running
+	 * without {@link Maven#saveToLocalRepository} downloads every jar exactly
+	 * once. Each jar is unpacked into a map of its entries and every entry name
+	 * is indexed to the jars that contain it, in class path order. Resources
+	 * are exposed through {@code mvnx:/<jar>/<name>} URLs that read from the
+	 * same maps. Entries of multi-release jars are overlaid up to the running
+	 * Java version like {@link java.util.jar.JarFile} would. Classes get the
+	 * URL of their jar as code source and packages the attributes of its
+	 * manifest.
+	 */
+	public static final class MemoryClassLoader extends ClassLoader {
+
+		private static final String VERSIONS = "META-INF/versions/";
+
+		static {
+			registerAsParallelCapable();
+		}
+
+		private final List<Map<String, byte[]>> jars = new ArrayList<>();
+		private final List<Manifest> manifests = new ArrayList<>();
+		private final List<ProtectionDomain> domains = new ArrayList<>();
+		private final Map<String, List<Integer>> index = new HashMap<>();
+		private final URLStreamHandler handler = new URLStreamHandler() {
+
+			@Override
+			protected URLConnection openConnection(URL url) {
+				return new URLConnection(url) {
+
+					@Override
+					public void connect() {
+						connected = true;
+					}
+
+					@Override
+					public InputStream getInputStream() throws IOException {
+						return new ByteArrayInputStream(entry(getURL()));
+					}
+
+				};
+			}
+
+		};
+
+		/**
+		 * @param locations the URL each jar was fetched from, which becomes the
+		 *                  code source of its classes
+		 * @param contents  the jars in class path order
+		 */
+		public MemoryClassLoader(URL[] locations, List<byte[]> contents) {
+			super("mvnx", ClassLoader.getSystemClassLoader());
+			for (int i = 0; i < contents.size(); i++) {
+				Map<String, byte[]> entries = read(contents.get(i));
+				for (String name : entries.keySet()) {
+					index.computeIfAbsent(name, key -> new ArrayList<>())
+							.add(jars.size());
+				}
+				jars.add(entries);
+				manifests.add(manifest(entries.get("META-INF/MANIFEST.MF")));
+				domains.add(
+						new ProtectionDomain(
+								new CodeSource(
+										locations[i],
+										(CodeSigner[]) null
+								),
+								null,
+								this,
+								null
+						)
+				);
+			}
+		}
+
+		@Override
+		protected Class<?> findClass(String name)
+				throws ClassNotFoundException {
+			String resource = name.replace('.', '/') + ".class";
+			List<Integer> numbers = index.get(resource);
+			if (numbers == null) {
+				throw new ClassNotFoundException(name);
+			}
+			int number = numbers.get(0);
+			byte[] content = jars.get(number).get(resource);
+			int dot = name.lastIndexOf('.');
+			if (dot > 0) {
+				String packageName = name.substring(0, dot);
+				if (getDefinedPackage(packageName) == null) {
+					try {
+						definePackage(packageName, number);
+					} catch (IllegalArgumentException e) {
+						// defined concurrently by another class of the package
+					}
+				}
+			}
+			return defineClass(
+					name,
+					content,
+					0,
+					content.length,
+					domains.get(number)
+			);
+		}
+
+		/**
+		 * Defines a package with the specification and implementation
+		 * attributes of the jar's manifest like {@link URLClassLoader} does:
+		 * the entry of the package first, then the main attributes.
+		 */
+		private void definePackage(String name, int number) {
+			Manifest manifest = manifests.get(number);
+			Attributes entry = null;
+			Attributes main = null;
+			if (manifest != null) {
+				entry = manifest.getAttributes(name.replace('.', '/') + "/");
+				main = manifest.getMainAttributes();
+			}
+			definePackage(
+					name,
+					attribute(entry, main, Attributes.Name.SPECIFICATION_TITLE),
+					attribute(
+							entry,
+							main,
+							Attributes.Name.SPECIFICATION_VERSION
+					),
+					attribute(
+							entry,
+							main,
+							Attributes.Name.SPECIFICATION_VENDOR
+					),
+					attribute(
+							entry,
+							main,
+							Attributes.Name.IMPLEMENTATION_TITLE
+					),
+					attribute(
+							entry,
+							main,
+							Attributes.Name.IMPLEMENTATION_VERSION
+					),
+					attribute(
+							entry,
+							main,
+							Attributes.Name.IMPLEMENTATION_VENDOR
+					),
+					"true".equalsIgnoreCase(
+							attribute(entry, main, Attributes.Name.SEALED)
+					) ? domains.get(number).getCodeSource().getLocation() : null
+			);
+		}
+
+		private static String attribute(
+				Attributes entry,
+				Attributes main,
+				Attributes.Name name
+		) {
+			String value = entry == null ? null : entry.getValue(name);
+			if (value == null && main != null) {
+				value = main.getValue(name);
+			}
+			return value;
+		}
+
+		private static Manifest manifest(byte[] content) {
+			if (content == null) {
+				return null;
+			}
+			try {
+				return new Manifest(new ByteArrayInputStream(content));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		protected URL findResource(String name) {
+			List<Integer> numbers = index.get(name);
+			if (numbers == null) {
+				return null;
+			}
+			return url(numbers.get(0), name);
+		}
+
+		@Override
+		protected Enumeration<URL> findResources(String name) {
+			List<URL> urls = new ArrayList<>();
+			for (int number : index.getOrDefault(name, List.of())) {
+				urls.add(url(number, name));
+			}
+			return Collections.enumeration(urls);
+		}
+
+		private URL url(int number, String name) {
+			try {
+				return URL.of(
+						new URI("mvnx", null, "/" + number + "/" + name, null),
+						handler
+				);
+			} catch (URISyntaxException | MalformedURLException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private byte[] entry(URL url) throws FileNotFoundException {
+			try {
+				String path = url.toURI().getPath();
+				int slash = path.indexOf('/', 1);
+				int number = Integer.parseInt(path.substring(1, slash));
+				byte[] content = jars.get(number)
+						.get(path.substring(slash + 1));
+				if (content != null) {
+					return content;
+				}
+			} catch (URISyntaxException | RuntimeException e) {
+				// not one of our URLs
+			}
+			throw new FileNotFoundException(url.toString());
+		}
+
+		private static Map<String, byte[]> read(byte[] content) {
+			Map<String, byte[]> entries = new HashMap<>();
+			boolean multiRelease = false;
+			try (JarInputStream jar = new JarInputStream(
+					new ByteArrayInputStream(content),
+					false
+			)) {
+				Manifest manifest = jar.getManifest();
+				if (manifest != null) {
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					manifest.write(bytes);
+					entries.put("META-INF/MANIFEST.MF", bytes.toByteArray());
+					multiRelease = "true".equalsIgnoreCase(
+							manifest.getMainAttributes()
+									.getValue("Multi-Release")
+					);
+				}
+				for (JarEntry entry = jar
+						.getNextJarEntry(); entry != null; entry = jar
+								.getNextJarEntry()) {
+					entries.put(entry.getName(), jar.readAllBytes());
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (multiRelease) {
+				int feature = Runtime.version().feature();
+				List<String> versioned = new ArrayList<>(entries.keySet());
+				versioned.removeIf(
+						name -> version(name) == 0 || version(name) > feature
+				);
+				versioned.sort(
+						Comparator.comparingInt(MemoryClassLoader::version)
+				);
+				for (String name : versioned) {
+					entries.put(
+							name.substring(
+									name.indexOf('/', VERSIONS.length()) + 1
+							),
+							entries.get(name)
+					);
+				}
+			}
+			return entries;
+		}
+
+		private static int version(String name) {
+			if (!name.startsWith(VERSIONS)) {
+				return 0;
+			}
+			int slash = name.indexOf('/', VERSIONS.length());
+			if (slash < 0) {
+				return 0;
+			}
+			try {
+				return Integer
+						.parseInt(name.substring(VERSIONS.length(), slash));
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+
+	}
+
+	/**
+	 * The single HTTP client all repository traffic goes through. It prefers
+	 * HTTP/2 so that requests to the same repository are multiplexed over one
+	 * connection and otherwise keeps HTTP/1.1 connections alive in its pool.
+	 * The JDK client does not expose its pool, so
+	 * {@link #estimatedConnections()} is an estimate per origin: one connection
+	 * for HTTP/2 and the peak number of concurrent requests for HTTP/1.1. It is
+	 * no bound either way, as the pool may close idle connections and open new
+	 * ones between bursts.
+	 */
+	public static class Transport {
+
+		private final AtomicLong requests = new AtomicLong();
+		private final Map<String, Origin> origins = new ConcurrentHashMap<>();
+		private HttpClient client;
+
+		public <T> HttpResponse<T> send(
+				HttpRequest request,
+				BodyHandler<T> bodyHandler
+		) throws IOException, InterruptedException {
+			requests.incrementAndGet();
+			Origin origin = origins.computeIfAbsent(
+					origin(request.uri()),
+					key -> new Origin()
+			);
+			origin.begin();
+			origin.requests.incrementAndGet();
+			RequestEvent event = new RequestEvent();
+			event.begin();
+			try {
+				HttpResponse<T> response = client().send(request, bodyHandler);
+				if (response.version() == HttpClient.Version.HTTP_2) {
+					origin.multiplexed = true;
+				}
+				long bytes = 0;
+				if (response.body() instanceof byte[] content) {
+					bytes = content.length;
+				} else if (response.body() instanceof Path file
+						&& Files.isRegularFile(file)) {
+					bytes = Files.size(file);
+				}
+				origin.bytes.addAndGet(bytes);
+				event.method = request.method();
+				event.uri = request.uri().toString();
+				event.status = response.statusCode();
+				event.bytes = bytes;
+				event.commit();
+				return response;
+			} finally {
+				origin.inFlight.decrementAndGet();
+			}
+		}
+
+		Map<String, Origin> origins() {
+			return origins;
+		}
+
+		public long requests() {
+			return requests.get();
+		}
+
+		/**
+		 * @return the estimated connections of all origins
+		 */
+		public long estimatedConnections() {
+			return origins.values()
+					.stream()
+					.mapToLong(Origin::estimatedConnections)
+					.sum();
+		}
+
+		private synchronized HttpClient client() {
+			if (client == null) {
+				client = HttpClient.newBuilder()
+						.version(HttpClient.Version.HTTP_2)
+						.followRedirects(HttpClient.Redirect.NORMAL)
+						.connectTimeout(Duration.ofMillis(TIMEOUT_MS))
+						.build();
+			}
+			return client;
+		}
+
+		private static String origin(URI uri) {
+			return uri.getScheme() + "://" + uri.getAuthority();
+		}
+
+		static class Origin {
+
+			final AtomicInteger inFlight = new AtomicInteger();
+			final AtomicInteger peak = new AtomicInteger();
+			final AtomicLong requests = new AtomicLong();
+			final AtomicLong bytes = new AtomicLong();
+			volatile boolean multiplexed = false;
+
+			void begin() {
+				peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			}
+
+			long estimatedConnections() {
+				return multiplexed ? 1 : peak.get();
+			}
+
+		}
+
+	}
+
+	/**
+	 * Remembers which repository served an artifact and which repositories did
+	 * not have a path, so later runs neither probe a secondary repository for
+	 * every artifact of the primary one nor the other way round. Misses expire
+	 * after a TTL; the file is tab separated with one entry per line. Verified
+	 * checksums only ever accumulate, so they are appended to a file of their
+	 * own, which is cut down to the newest half once it holds more than
+	 * {@link #CHECKSUMS} lines.
+	 */
+	public static class RepositoryCache {
+
+		static final int CHECKSUMS = 65_536;
+
+		private final Path file;
+		private final Path checksumFile;
+		private final Duration missTtl;
+		private final Map<String, Long> misses = new ConcurrentHashMap<>();
+		private final Map<String, String> remotes = new ConcurrentHashMap<>();
+		private final Map<String, String> checksums = new ConcurrentHashMap<>();
+		private final Queue<String> newChecksums = new ConcurrentLinkedQueue<>();
+		private volatile boolean dirty = false;
+		private final Lock lock = new ReentrantLock();
+
+		public RepositoryCache(Path file, Duration missTtl) {
+			this.file = file;
+			this.checksumFile = file.resolveSibling("checksums.tsv");
+			this.missTtl = missTtl;
+		}
+
+		public static RepositoryCache read(Path file, Duration missTtl) {
+			RepositoryCache cache = new RepositoryCache(file, missTtl);
+			if (Files.isRegularFile(file)) {
+				try {
+					for (String line : Files
+							.readAllLines(file, StandardCharsets.UTF_8)) {
+						String[] columns = line.split("\t");
+						if (columns.length == 3 && "found".equals(columns[0])) {
+							cache.remotes.put(columns[1], columns[2]);
+						} else if (columns.length == 3
+								&& "sha1".equals(columns[0])) {
+							// written here by earlier versions
+							cache.checksum(URI.create(columns[1]), columns[2]);
+							cache.dirty = true;
+						} else if (columns.length == 4
+								&& "missing".equals(columns[0])) {
+							cache.misses.put(
+									columns[2] + "\t" + columns[3],
+									Long.parseLong(columns[1])
+							);
+						}
+					}
+				} catch (IOException | IllegalArgumentException e) {
+					cache.misses.clear();
+					cache.remotes.clear();
+					cache.checksums.clear();
+					cache.newChecksums.clear();
+				}
+			}
+			cache.readChecksums();
+			return cache;
+		}
+
+		private void readChecksums() {
+			if (!Files.isRegularFile(checksumFile)) {
+				return;
+			}
+			try {
+				List<String> lines = Files
+						.readAllLines(checksumFile, StandardCharsets.UTF_8);
+				Map<String, String> recent = new LinkedHashMap<>();
+				for (String line : lines) {
+					String[] columns = line.split("\t");
+					if (columns.length == 2) {
+						recent.remove(columns[0]);
+						recent.put(columns[0], columns[1]);
+					}
+				}
+				List<Map.Entry<String, String>> entries = new ArrayList<>(
+						recent.entrySet()
+				);
+				if (lines.size() > CHECKSUMS) {
+					entries = entries.subList(
+							Math.max(0, entries.size() - CHECKSUMS / 2),
+							entries.size()
+					);
+					List<String> newest = new ArrayList<>();
+					for (Map.Entry<String, String> entry : entries) {
+						newest.add(entry.getKey() + "\t" + entry.getValue());
+					}
+					writeLines(checksumFile, newest);
+				}
+				for (Map.Entry<String, String> entry : entries) {
+					checksums.putIfAbsent(entry.getKey(), entry.getValue());
+				}
+			} catch (IOException e) {
+				// checksums are fetched again
+			}
+		}
+
+		/**
+		 * Writes the cache if it changed. Writes are serialised so that a batch
+		 * resolving on many threads never replaces the file with an older
+		 * snapshot.
+		 */
+		public void write() {
+			lock.lock();
+			try {
+				if (dirty) {
+					dirty = false;
+					writeLines(file, lines());
+				}
+				appendChecksums();
+			} catch (IOException e) {
+				dirty = true;
+				throw new UncheckedIOException(e);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void appendChecksums() throws IOException {
+			List<String> lines = new ArrayList<>();
+			String line;
+			while ((line = newChecksums.poll()) != null) {
+				lines.add(line);
+			}
+			if (lines.isEmpty()) {
+				return;
+			}
+			try {
+				Files.write(
+						checksumFile,
+						lines,
+						StandardCharsets.UTF_8,
+						StandardOpenOption.CREATE,
+						StandardOpenOption.APPEND
+				);
+			} catch (IOException e) {
+				newChecksums.addAll(lines);
+				throw e;
+			}
+		}
+
+		private List<String> lines() {
+			List<String> lines = new ArrayList<>();
+			remotes.forEach(
+					(coordinates, remote) -> lines
+							.add("found\t" + coordinates + "\t" + remote)
+			);
+			misses.forEach((key, time) -> {
+				if (!isExpired(time)) {
+					lines.add("missing\t" + time + "\t" + key);
+				}
+			});
+			return lines;
+		}
+
+		public String remote(Artifact artifact) {
+			return remotes.get(coordinates(artifact));
+		}
+
+		public void found(Artifact artifact, String remote) {
+			if (!remote.equals(remotes.put(coordinates(artifact), remote))) {
+				dirty = true;
+			}
+		}
+
+		/**
+		 * @return the SHA-1 a file had when it was last verified or null
+		 */
+		public String checksum(URI uri) {
+			return checksums.get(uri.toString());
+		}
+
+		public void checksum(URI uri, String checksum) {
+			if (!checksum.equals(checksums.put(uri.toString(), checksum))) {
+				newChecksums.add(uri + "\t" + checksum);
+			}
+		}
+
+		public boolean isMissing(String remote, Path path) {
+			return isMissing(remote, path, missTtl);
+		}
+
+		/**
+		 * @param ttl how long the caller trusts a miss, instances sharing the
+		 *            cache may differ; misses are kept no longer than the TTL
+		 *            of the cache
+		 */
+		public boolean isMissing(String remote, Path path, Duration ttl) {
+			Long time = misses.get(key(remote, path));
+			return time != null && !isExpired(time)
+					&& System.currentTimeMillis() - time < ttl.toMillis();
+		}
+
+		public void missing(String remote, Path path) {
+			misses.put(key(remote, path), System.currentTimeMillis());
+			dirty = true;
+		}
+
+		private boolean isExpired(long time) {
+			return System.currentTimeMillis() - time >= missTtl.toMillis();
+		}
+
+		private static String key(String remote, Path path) {
+			return remote + "\t" + path.toString().replace('\\', '/');
+		}
+
+		private static String coordinates(Artifact artifact) {
+			return artifact.groupId + ":" + artifact.artifactId + ":"
+					+ artifact.version;
+		}
+
+	}
+
+	/**
+	 * The files known to exist in the local repository, so that presence checks
+	 * are lookups in memory instead of file system calls. It is kept in the
+	 * cache directory with one path per line. Paths it does not know are looked
+	 * up on disk and added when they exist, paths that turn out to be gone are
+	 * removed, so a stale index costs extra lookups but never a wrong result.
+	 */
+	public static class LocalIndex {
+
+		private final Path repository;
+		private final Path file;
+		private final Set<String> files = ConcurrentHashMap.newKeySet();
+		private volatile boolean dirty = false;
+		private final Lock lock = new ReentrantLock();
+
+		public LocalIndex(Path repository, Path file) {
+			this.repository = repository;
+			this.file = file;
+		}
+
+		public static LocalIndex read(Path repository, Path file) {
+			LocalIndex index = new LocalIndex(repository, file);
+			if (Files.isRegularFile(file)) {
+				try {
+					for (String line : Files
+							.readAllLines(file, StandardCharsets.UTF_8)) {
+						if (!line.isEmpty()) {
+							index.files.add(line);
+						}
+					}
+				} catch (IOException e) {
+					index.files.clear();
+				}
+			}
+			return index;
+		}
+
+		public boolean exists(Path path) {
+			if (files.contains(key(path))) {
+				return true;
+			}
+			if (Files.isRegularFile(repository.resolve(path))) {
+				add(path);
+				return true;
+			}
+			return false;
+		}
+
+		public void add(Path path) {
+			if (files.add(key(path))) {
+				dirty = true;
+			}
+		}
+
+		public void remove(Path path) {
+			if (files.remove(key(path))) {
+				dirty = true;
+			}
+		}
+
+		/**
+		 * Writes the index if it changed, one writer at a time like
+		 * {@link RepositoryCache#write()}.
+		 */
+		public void write() {
+			lock.lock();
+			try {
+				if (dirty) {
+					dirty = false;
+					List<String> lines = new ArrayList<>(files);
+					lines.sort(Comparator.naturalOrder());
+					writeLines(file, lines);
+				}
+			} catch (IOException e) {
+				dirty = true;
+				throw new UncheckedIOException(e);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private static String key(Path path) {
+			return path.toString().replace('\\', '/');
+		}
+
+	}
+
+	/**
+	 * A string split once into literal text and {@code ${key}} placeholders.
+	 * Parsed templates are shared, up to {@link #CACHE_SIZE} distinct strings.
+	 */
+	static class Template {
+
+		private static final int CACHE_SIZE = 16_384;
+		private static final Map<String, Template> CACHE = new ConcurrentHashMap<>();
+
+		private final String text;
+		private final String[] literals;
+		private final String[] keys;
+
+		private Template(String text, String[] literals, String[] keys) {
+			this.text = text;
+			this.literals = literals;
+			this.keys = keys;
+		}
+
+		static Template of(String text) {
+			Template template = CACHE.get(text);
+			if (template == null) {
+				template = parse(text);
+				if (CACHE.size() < CACHE_SIZE) {
+					Template cached = CACHE.putIfAbsent(text, template);
+					if (cached != null) {
+						template = cached;
+					}
+				}
+			}
+			return template;
+		}
+
+		private static Template parse(String text) {
+			List<String> literals = new ArrayList<>();
+			List<String> keys = new ArrayList<>();
+			Matcher matcher = PROPERTIES_TOKEN.matcher(text);
+			int last = 0;
+			while (matcher.find()) {
+				literals.add(text.substring(last, matcher.start()));
+				keys.add(matcher.group(1));
+				last = matcher.end();
+			}
+			literals.add(text.substring(last));
+			return new Template(
+					text,
+					literals.toArray(String[]::new),
+					keys.toArray(String[]::new)
+			);
+		}
+
+		/**
+		 * Replaces every placeholder with its value, leaving placeholders
+		 * without a value as they are.
+		 */
+		String apply(Function<String, String> values) {
+			if (keys.length == 0) {
+				return text;
+			}
+			StringBuilder builder = new StringBuilder(text.length());
+			for (int i = 0; i < keys.length; i++) {
+				builder.append(literals[i]);
+				String value = values.apply(keys[i]);
+				if (value != null) {
+					builder.append(value);
+				} else {
+					builder.append("${").append(keys[i]).append("}");
+				}
+			}
+			builder.append(literals[keys.length]);
+			return builder.toString();
+		}
+
+	}
+
+	/**
+	 * Interpolates templates against one lookup function, usually the property
+	 * lookup of one artifact hierarchy during
+	 * {@link Maven#resolve(Artifact, List, Predicate)}. Each key is looked up
+	 * and interpolated once and then remembered, so a scope must not outlive
+	 * changes to the properties it reads. A key whose value refers back to
+	 * itself fails instead of recursing forever.
+	 */
+	public static class PropertyScope {
+
+		private final Function<String, String> lookupFunction;
+		private final Map<String, String> values = new HashMap<>();
+		private final Set<String> resolving = new LinkedHashSet<>();
+
+		public PropertyScope(Function<String, String> lookupFunction) {
+			this.lookupFunction = lookupFunction;
+		}
+
+		public String template(String text) {
+			if (text == null) {
+				return null;
+			}
+			return Template.of(text).apply(this::value);
+		}
+
+		public String value(String key) {
+			if (values.containsKey(key)) {
+				return values.get(key);
+			}
+			if (!resolving.add(key)) {
+				throw new IllegalStateException(
+						"Cyclic property reference "
+								+ String.join(" -> ", resolving) + " -> " + key
+				);
+			}
+			try {
+				String value = template(lookupFunction.apply(key));
+				values.put(key, value);
+				return value;
+			} finally {
+				resolving.remove(key);
+			}
+		}
+
+	}
+
+	static class Pom {
+
+		Artifact model;
+		String remote;
+
+	}
+
+	/**
+	 * The parts of a maven-metadata.xml needed to pick a version: the versions
+	 * of an artifact or the timestamped files of a snapshot.
+	 */
+	static class Metadata {
+
+		String latest;
+		String release;
+		List<String> versions = new ArrayList<>();
+		String timestamp;
+		String buildNumber;
+		Map<String, String> snapshotVersions = new HashMap<>();
+
+		/**
+		 * @return the timestamped version of the file with the given extension
+		 *         or null if the snapshot was deployed without one
+		 */
+		String snapshotVersion(String version, String extension) {
+			String value = snapshotVersions.get(extension);
+			if (value != null) {
+				return value;
+			}
+			if (timestamp != null && buildNumber != null) {
+				return version
+						.substring(0, version.length() - "SNAPSHOT".length())
+						+ timestamp + "-" + buildNumber;
+			}
+			return null;
+		}
+
+	}
+
+	/**
+	 * Maven's version order and version ranges. Versions are split into numbers
+	 * and qualifiers at dots, hyphens and changes between digits and letters.
+	 * Numbers compare numerically and missing parts count as 0 or a release.
+	 * Qualifiers rank alpha, beta, milestone, rc, snapshot, release and sp,
+	 * followed by all others in alphabetical order.
+	 */
+	public static class VersionRange {
+
+		private static final Pattern ITEM = Pattern.compile("\\d+|[^\\d.-]+");
+		private static final Pattern RESTRICTION = Pattern
+				.compile("([\\[(])([^\\])]*)([\\])])");
+		private static final List<String> QUALIFIERS = List
+				.of("alpha", "beta", "milestone", "rc", "snapshot", "", "sp");
+
+		public static boolean isDynamic(String version) {
+			return version != null && ("LATEST".equals(version)
+					|| "RELEASE".equals(version) || version.startsWith("[")
+					|| version.startsWith("("));
+		}
+
+		/**
+		 * @return the newest version in the metadata that LATEST, RELEASE or
+		 *         the range stands for or null if there is none
+		 */
+		public static String select(
+				String version,
+				Collection<Metadata> metadata
+		) {
+			Stream<String> candidates = metadata.stream()
+					.flatMap(
+							found -> Stream.concat(
+									Stream.of(found.latest, found.release),
+									found.versions.stream()
+							)
+					)
+					.filter(
+							candidate -> candidate != null
+									&& !candidate.isBlank()
+					);
+			if (!"LATEST".equals(version)) {
+				candidates = candidates
+						.filter(candidate -> !candidate.endsWith("-SNAPSHOT"));
+			}
+			if (!"LATEST".equals(version) && !"RELEASE".equals(version)) {
+				candidates = candidates
+						.filter(candidate -> contains(version, candidate));
+			}
+			return candidates.max(VersionRange::compare).orElse(null);
+		}
+
+		/**
+		 * Whether a version lies within one of the restrictions of a range like
+		 * [1.0,2.0), (,1.0],[1.2,) or [1.5].
+		 */
+		public static boolean contains(String range, String version) {
+			Matcher matcher = RESTRICTION.matcher(range);
+			while (matcher.find()) {
+				String[] bounds = matcher.group(2).split(",", -1);
+				String lower = bounds[0].strip();
+				String upper = bounds[bounds.length - 1].strip();
+				if (bounds.length == 1) {
+					if (compare(version, lower) == 0) {
+						return true;
+					}
+					continue;
+				}
+				if (!lower.isEmpty()) {
+					int result = compare(version, lower);
+					if (result < 0
+							|| result == 0 && "(".equals(matcher.group(1))) {
+						continue;
+					}
+				}
+				if (!upper.isEmpty()) {
+					int result = compare(version, upper);
+					if (result > 0
+							|| result == 0 && ")".equals(matcher.group(3))) {
+						continue;
+					}
+				}
+				return true;
+			}
+			return false;
+		}
+
+		public static int compare(String left, String right) {
+			List<String> leftItems = items(left);
+			List<String> rightItems = items(right);
+			int size = Math.max(leftItems.size(), rightItems.size());
+			for (int i = 0; i < size; i++) {
+				int result = compareItems(
+						i < leftItems.size() ? leftItems.get(i) : null,
+						i < rightItems.size() ? rightItems.get(i) : null
+				);
+				if (result != 0) {
+					return result;
+				}
+			}
+			return 0;
+		}
+
+		private static int compareItems(String left, String right) {
+			if (left == null) {
+				return -compareItems(right, null);
+			}
+			boolean number = isNumber(left);
+			if (right == null) {
+				if (number) {
+					return left.matches("0+") ? 0 : 1;
+				}
+				return compareQualifiers(left, "");
+			}
+			if (number != isNumber(right)) {
+				return number ? 1 : -1;
+			}
+			if (number) {
+				String leftDigits = left.replaceFirst("^0+(?=.)", "");
+				String rightDigits = right.replaceFirst("^0+(?=.)", "");
+				if (leftDigits.length() != rightDigits.length()) {
+					return Integer
+							.compare(leftDigits.length(), rightDigits.length());
+				}
+				return leftDigits.compareTo(rightDigits);
+			}
+			return compareQualifiers(left, right);
+		}
+
+		private static int compareQualifiers(String left, String right) {
+			int leftRank = rank(left);
+			int rightRank = rank(right);
+			if (leftRank != rightRank) {
+				return Integer.compare(leftRank, rightRank);
+			}
+			return leftRank == QUALIFIERS.size() ? left.compareTo(right) : 0;
+		}
+
+		private static int rank(String qualifier) {
+			int rank = QUALIFIERS.indexOf(qualifier);
+			return rank == -1 ? QUALIFIERS.size() : rank;
+		}
+
+		private static boolean isNumber(String item) {
+			return !item.isEmpty() && Character.isDigit(item.charAt(0));
+		}
+
+		private static List<String> items(String version) {
+			List<String> items = new ArrayList<>();
+			Matcher matcher = ITEM.matcher(version.toLowerCase(Locale.ROOT));
+			while (matcher.find()) {
+				items.add(alias(matcher.group()));
+			}
+			return items;
+		}
+
+		private static String alias(String item) {
+			switch (item) {
+			case "a":
+				return "alpha";
+			case "b":
+				return "beta";
+			case "m":
+				return "milestone";
+			case "cr":
+				return "rc";
+			case "ga":
+			case "final":
+			case "release":
+				return "";
+			default:
+				return item;
+			}
+		}
+
+	}
+
+	/**
+	 * Streams a POM and keeps only what resolution needs: parent, coordinates,
+	 * packaging, properties, dependency management and dependencies. The
+	 * returned model is shared through the {@link PomCache} and must not be
+	 * modified; absent elements stay {@code null}. DTDs and external entities
+	 * are never loaded.
+	 */
+	public static class PomReader {
 
-		public Document xmlDocument(URI uri) {
-			try {
-				if (documentBuilder == null) {
-					documentBuilder = DocumentBuilderFactory.newInstance()
-							.newDocumentBuilder();
+		private static final XMLInputFactory FACTORY = xmlInputFactory();
+
+		public static Artifact read(InputStream inputStream) {
+			try (inputStream) {
+				XMLStreamReader reader = reader(inputStream);
+				try {
+					Artifact model = new Artifact();
+					model.packaging = null;
+					if (nextChild(reader)) {
+						readProject(reader, model);
+					}
+					return model;
+				} finally {
+					reader.close();
 				}
-				return documentBuilder
-						.parse(new InputSource(uri.toASCIIString()));
-			} catch (SAXException | ParserConfigurationException
-					| IOException e) {
+			} catch (IOException | XMLStreamException e) {
 				throw new IllegalStateException(e);
 			}
 		}
 
-		public Document pom(Artifact artifact) {
-			Path path = path(artifact, "pom");
-			Path absolutePath = localRepository.resolve(path);
-			if (Files.exists(absolutePath)) {
-				return xmlDocument(absolutePath.toUri());
+		/**
+		 * Returns the text of the first element with the given name anywhere in
+		 * the document or {@code null}.
+		 */
+		public static String readElement(InputStream inputStream, String name) {
+			try (inputStream) {
+				XMLStreamReader reader = reader(inputStream);
+				try {
+					while (reader.hasNext()) {
+						if (reader.next() == XMLStreamConstants.START_ELEMENT
+								&& name.equals(reader.getLocalName())) {
+							return text(reader);
+						}
+					}
+					return null;
+				} finally {
+					reader.close();
+				}
+			} catch (IOException | XMLStreamException e) {
+				throw new IllegalStateException(e);
 			}
-			return xmlDocument(uri(artifact, "pom"));
 		}
 
-		public URI uri(Artifact artifact, String extension) {
-			Path path = Maven.path(artifact, extension);
-			Path absolutePath = localRepository.resolve(path);
-			if (Files.exists(absolutePath)) {
-				return absolutePath.toUri();
-			}
-			if (artifact.remote != null) {
-				URI uri = uri(artifact.remote, path, absolutePath);
-				if (uri != null) {
-					return uri;
-				}
-			}
-			for (String remote : repositories) {
-				URI uri = uri(remote, path, absolutePath);
-				if (uri != null) {
-					artifact.remote = remote;
-					return uri;
+		public static Metadata readMetadata(InputStream inputStream) {
+			try (inputStream) {
+				XMLStreamReader reader = reader(inputStream);
+				try {
+					Metadata metadata = new Metadata();
+					if (nextChild(reader)) {
+						while (nextChild(reader)) {
+							if ("versioning".equals(reader.getLocalName())) {
+								readVersioning(reader, metadata);
+							} else {
+								skip(reader);
+							}
+						}
+					}
+					return metadata;
+				} finally {
+					reader.close();
 				}
+			} catch (IOException | XMLStreamException e) {
+				throw new IllegalStateException(e);
 			}
-			throw new IllegalArgumentException("Download failed " + path);
 		}
 
-		public URI uri(String remote, Path path, Path absolutePath) {
-			try {
-				URI uri = URI.create(remote)
-						.resolve(path.toString().replace('\\', '/'));
-				HttpClient httpClient = HttpClient.newBuilder()
-						.followRedirects(HttpClient.Redirect.NORMAL)
-						.build();
-				Builder requestBuilder = HttpRequest.newBuilder()
-						.uri(uri)
-						.timeout(Duration.ofMillis(TIMEOUT_MS));
-				if (saveToLocalRepository) {
-					Path parent = absolutePath.getParent();
-					if (parent != null) {
-						Files.createDirectories(parent);
+		private static void readVersioning(
+				XMLStreamReader reader,
+				Metadata metadata
+		) throws XMLStreamException {
+			while (nextChild(reader)) {
+				switch (reader.getLocalName()) {
+				case "latest":
+					metadata.latest = text(reader).strip();
+					break;
+				case "release":
+					metadata.release = text(reader).strip();
+					break;
+				case "versions":
+					while (nextChild(reader)) {
+						metadata.versions.add(text(reader).strip());
 					}
-					HttpResponse<Path> response = httpClient.send(
-							requestBuilder.build(),
-							HttpResponse.BodyHandlers.ofFile(absolutePath)
-					);
-					if (response.statusCode() == 200) {
-						return response.body().toUri();
+					break;
+				case "snapshot":
+					while (nextChild(reader)) {
+						switch (reader.getLocalName()) {
+						case "timestamp":
+							metadata.timestamp = text(reader).strip();
+							break;
+						case "buildNumber":
+							metadata.buildNumber = text(reader).strip();
+							break;
+						default:
+							skip(reader);
+						}
 					}
-				} else {
-					HttpRequest request = requestBuilder
-							.method("HEAD", BodyPublishers.noBody())
-							.build();
-					HttpResponse<Void> response = httpClient.send(
-							request,
-							HttpResponse.BodyHandlers.discarding()
-					);
-					if (response.statusCode() == 200) {
-						return uri;
+					break;
+				case "snapshotVersions":
+					while (nextChild(reader)) {
+						readSnapshotVersion(reader, metadata);
 					}
+					break;
+				default:
+					skip(reader);
 				}
-			} catch (IOException | InterruptedException e) {
-				throw new IllegalStateException(e);
 			}
-			return null;
 		}
 
-		public Path localRepository(Path userHomeM2, Path settingsXml) {
-			if (Files.exists(settingsXml)) {
-				NodeList elements = xmlDocument(settingsXml.toUri())
-						.getElementsByTagName("localRepository");
-				if (elements.getLength() > 0
-						&& !elements.item(0).getTextContent().isBlank()) {
-					return Path.of(
-							template(
-									elements.item(0).getTextContent(),
-									Maven::lookupSystemPropertyOrEnvironmentVariable
-							)
-					);
+		private static void readSnapshotVersion(
+				XMLStreamReader reader,
+				Metadata metadata
+		) throws XMLStreamException {
+			String classifier = "";
+			String extension = null;
+			String value = null;
+			while (nextChild(reader)) {
+				switch (reader.getLocalName()) {
+				case "classifier":
+					classifier = text(reader).strip();
+					break;
+				case "extension":
+					extension = text(reader).strip();
+					break;
+				case "value":
+					value = text(reader).strip();
+					break;
+				default:
+					skip(reader);
 				}
 			}
-			return userHomeM2.resolve("repository");
+			if (classifier.isEmpty() && extension != null && value != null) {
+				metadata.snapshotVersions.put(extension, value);
+			}
 		}
 
-		public void resolve(
-				Artifact artifact,
-				List<Artifact> artifacts,
-				Predicate<Artifact> filter
-		) {
-			List<Artifact> artifactHierarchy = new ArrayList<>(artifacts);
-			artifactHierarchy.add(artifact);
-
-			Document xmlDocument = pom(artifact);
-			Element projectElement = xmlDocument.getDocumentElement();
-
-			for (int i = 0; i < projectElement.getChildNodes()
-					.getLength(); i++) {
-				Node item = projectElement.getChildNodes().item(i);
-				switch (item.getNodeName()) {
+		private static void readProject(XMLStreamReader reader, Artifact model)
+				throws XMLStreamException {
+			while (nextChild(reader)) {
+				switch (reader.getLocalName()) {
 				case "parent":
-					Artifact parent = artifactFromNode(item);
-					parent.packaging = "pom";
-					resolve(parent, artifactHierarchy, filter);
-					artifact.parent = parent;
-					if (artifact.version == null) {
-						artifact.version = artifact.parent.version;
-						artifact.properties
-								.put("project.version", artifact.version);
-					}
-					if (artifact.groupId == null) {
-						artifact.groupId = artifact.parent.groupId;
-					}
+					model.parent = readDependency(reader);
 					break;
 				case "groupId":
-					artifact.groupId = item.getTextContent();
+					model.groupId = text(reader);
 					break;
 				case "artifactId":
-					artifact.artifactId = item.getTextContent();
+					model.artifactId = text(reader);
 					break;
 				case "version":
-					artifact.version = item.getTextContent();
-					artifact.properties
-							.put("project.version", artifact.version);
+					model.version = text(reader);
 					break;
 				case "packaging":
-					artifact.packaging = item.getTextContent();
+					model.packaging = text(reader);
 					break;
 				case "properties":
-					NodeList propertyNodes = item.getChildNodes();
-					for (int j = 0; j < propertyNodes.getLength(); j++) {
-						Node propertyNode = propertyNodes.item(j);
-						if (propertyNode.getNodeType() == Node.ELEMENT_NODE) {
-							Element propertyElement = (Element) propertyNode;
-							artifact.properties.put(
-									propertyElement.getTagName(),
-									propertyElement.getTextContent()
-							);
-						}
+					while (nextChild(reader)) {
+						String key = reader.getLocalName();
+						model.properties.put(key, text(reader));
 					}
 					break;
 				case "dependencyManagement":
-					NodeList dependencyElements = ((Element) item)
-							.getElementsByTagName("dependency");
-					for (int j = 0; j < dependencyElements.getLength(); j++) {
-						Artifact dependency = artifactFromNode(
-								dependencyElements.item(j)
-						);
-						resolveProperties(
-								dependency,
-								key -> lookupProperty(key, artifactHierarchy)
-						);
-						if ("import".equals(dependency.scope)) {
-							resolve(dependency, artifactHierarchy, filter);
-							artifact.dependencyManagement
-									.addAll(dependency.dependencyManagement);
+					while (nextChild(reader)) {
+						if ("dependencies".equals(reader.getLocalName())) {
+							readDependencies(
+									reader,
+									model.dependencyManagement
+							);
 						} else {
-							artifact.dependencyManagement.add(dependency);
+							skip(reader);
 						}
 					}
 					break;
 				case "dependencies":
-					NodeList dependencyNodes = item.getChildNodes();
-					for (int j = 0; j < dependencyNodes.getLength(); j++) {
-						Node dependencyNode = dependencyNodes.item(j);
-						if (dependencyNode.getNodeType() == Node.ELEMENT_NODE) {
-							Artifact dependency = artifactFromNode(
-									dependencyNode
-							);
-							artifact.dependencies.add(dependency);
-						}
-					}
+					readDependencies(reader, model.dependencies);
 					break;
+				default:
+					skip(reader);
 				}
 			}
+		}
 
-			for (Artifact dependency : artifact.dependencies) {
-				if (filter.test(dependency)) {
-					resolveProperties(
-							dependency,
-							key -> lookupProperty(key, artifactHierarchy)
-					);
-					if (filter.test(dependency)) {
-						manage(dependency, artifactHierarchy);
-						if (filter.test(dependency)) {
-							resolve(dependency, artifactHierarchy, filter);
-						}
-					}
+		private static void readDependencies(
+				XMLStreamReader reader,
+				List<Artifact> dependencies
+		) throws XMLStreamException {
+			while (nextChild(reader)) {
+				dependencies.add(readDependency(reader));
+			}
+		}
+
+		private static Artifact readDependency(XMLStreamReader reader)
+				throws XMLStreamException {
+			Artifact artifact = new Artifact();
+			while (nextChild(reader)) {
+				switch (reader.getLocalName()) {
+				case "groupId":
+					artifact.groupId = text(reader);
+					break;
+				case "artifactId":
+					artifact.artifactId = text(reader);
+					break;
+				case "version":
+					artifact.version = text(reader);
+					break;
+				case "scope":
+					artifact.scope = text(reader);
+					break;
+				case "classifier":
+					artifact.classifier = text(reader);
+					break;
+				case "type":
+					artifact.packaging = text(reader);
+					break;
+				case "optional":
+					artifact.optional = Boolean.parseBoolean(text(reader));
+					break;
+				default:
+					skip(reader);
 				}
 			}
+			return artifact;
 		}
 
-		public static void manage(
-				Artifact artifact,
-				List<Artifact> dependents
-		) {
-			String version = null;
-			String scope = null;
-			List<Artifact> dependencies = dependents.stream()
-					.flatMap(dependent -> dependent.hierarchy().stream())
-					.flatMap(
-							dependent -> Stream.concat(
-									dependent.dependencies.stream(),
-									dependent.dependencyManagement.stream()
-							)
-					)
-					.filter(artifact::equalsArtifact)
-					.collect(Collectors.toList());
-			for (Artifact dependency : dependencies) {
-				if (version == null) {
-					version = dependency.version;
+		/**
+		 * Moves to the next child element of the current element and returns
+		 * {@code false} once the current element ends instead.
+		 */
+		private static boolean nextChild(XMLStreamReader reader)
+				throws XMLStreamException {
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					return true;
 				}
-				if (scope == null) {
-					scope = dependency.scope;
+				if (event == XMLStreamConstants.END_ELEMENT) {
+					return false;
 				}
-				if (version != null && scope != null) {
+			}
+			return false;
+		}
+
+		/**
+		 * Returns the text content of the current element including nested
+		 * elements and leaves the reader on its end tag.
+		 */
+		private static String text(XMLStreamReader reader)
+				throws XMLStreamException {
+			StringBuilder text = new StringBuilder();
+			int depth = 1;
+			while (depth > 0) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					text.append(reader.getText());
+					break;
+				default:
 					break;
 				}
 			}
-			if (version != null) {
-				artifact.version = version;
-			}
-			if (scope == null) {
-				scope = "compile";
+			return text.toString();
+		}
+
+		private static void skip(XMLStreamReader reader)
+				throws XMLStreamException {
+			int depth = 1;
+			while (depth > 0) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					depth++;
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					depth--;
+				}
 			}
-			artifact.scope = scope;
 		}
 
-		public static Path userHomeM2(Path userHome) {
-			return userHome.resolve(".m2");
+		private static XMLStreamReader reader(InputStream inputStream)
+				throws XMLStreamException {
+			synchronized (FACTORY) {
+				return FACTORY.createXMLStreamReader(inputStream);
+			}
 		}
 
-		public static Path settingsXml(Path userHomeM2) {
-			return userHomeM2.resolve("settings.xml");
+		private static XMLInputFactory xmlInputFactory() {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			factory.setProperty(
+					XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+					false
+			);
+			factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+			return factory;
 		}
 
-		public static String lookupSystemPropertyOrEnvironmentVariable(
-				String key
-		) {
-			return Optional.ofNullable(System.getProperty(key))
-					.orElseGet(
-							() -> System.getenv(key.substring("env.".length()))
-					);
+	}
+
+	/**
+	 * Parsed POMs keyed by groupId:artifactId:version. Parents and BOMs are
+	 * shared by most of a dependency tree so every resolve of a {@link Maven}
+	 * instance reuses them. The least recently used entry is evicted once the
+	 * capacity is reached.
+	 */
+	public static class PomCache {
+
+		private final int capacity;
+		private final Map<String, Pom> entries = new LinkedHashMap<>(
+				16,
+				0.75f,
+				true
+		);
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+
+		public PomCache(int capacity) {
+			this.capacity = capacity;
 		}
 
-		public static String lookupProperty(
-				String key,
-				List<Artifact> artifacts
-		) {
-			for (Artifact artifact : artifacts) {
-				String value = artifact.properties.get(key);
-				if (value != null) {
-					return value;
-				}
-				if (artifact.parent != null) {
-					value = lookupProperty(key, List.of(artifact.parent));
-					if (value != null) {
-						return value;
-					}
-				}
+		public synchronized Pom get(Artifact artifact) {
+			Pom pom = entries.get(key(artifact));
+			if (pom == null) {
+				misses.incrementAndGet();
+			} else {
+				hits.incrementAndGet();
 			}
-			return lookupSystemPropertyOrEnvironmentVariable(key);
+			return pom;
 		}
 
-		public static void resolveProperties(
-				Artifact artifact,
-				Function<String, String> lookupFunction
-		) {
-			artifact.groupId = template(artifact.groupId, lookupFunction);
-			artifact.artifactId = template(artifact.artifactId, lookupFunction);
-			artifact.version = template(artifact.version, lookupFunction);
-			artifact.classifier = template(artifact.classifier, lookupFunction);
-			artifact.packaging = template(artifact.packaging, lookupFunction);
-			artifact.scope = template(artifact.scope, lookupFunction);
+		public synchronized boolean contains(Artifact artifact) {
+			return entries.containsKey(key(artifact));
 		}
 
-		public static String template(
-				String text,
-				Function<String, String> lookupFunction
-		) {
-			if (text == null) {
-				return text;
+		public synchronized void put(Artifact artifact, Pom pom) {
+			entries.put(key(artifact), pom);
+			if (entries.size() > capacity) {
+				Iterator<Pom> eldest = entries.values().iterator();
+				eldest.next();
+				eldest.remove();
 			}
+		}
 
-			final Matcher mat = PROPERTIES_TOKEN.matcher(text);
-			StringBuilder builder = new StringBuilder();
-			int last = 0;
-			while (mat.find()) {
-				builder.append(text.substring(last, mat.start()));
-				String key = mat.group(1);
-				String value = lookupFunction.apply(key);
-				value = template(value, lookupFunction);
-				if (value != null) {
-					builder.append(value);
-				} else {
-					builder.append("${").append(key).append("}");
-				}
-				last = mat.end();
-			}
+		public int capacity() {
+			return capacity;
+		}
 
-			if (last == 0) {
-				return text;
-			}
+		/**
+		 * Drops the POMs of snapshot versions, which may change in the
+		 * repository while a long-lived {@link Maven} keeps them.
+		 */
+		public synchronized void removeSnapshots() {
+			entries.keySet().removeIf(key -> key.endsWith("-SNAPSHOT"));
+		}
 
-			builder.append(text.substring(last));
+		public synchronized int size() {
+			return entries.size();
+		}
 
-			return builder.toString();
+		public long hits() {
+			return hits.get();
 		}
 
-		private static Artifact artifactFromNode(Node node) {
-			Artifact artifact = new Artifact();
-			for (int i = 0; i < node.getChildNodes().getLength(); i++) {
-				Node item = node.getChildNodes().item(i);
-				switch (item.getNodeName()) {
-				case "groupId":
-					artifact.groupId = item.getTextContent();
-					break;
-				case "artifactId":
-					artifact.artifactId = item.getTextContent();
-					break;
-				case "version":
-					artifact.version = item.getTextContent();
-					break;
-				case "scope":
-					artifact.scope = item.getTextContent();
-					break;
-				case "classifier":
-					artifact.classifier = item.getTextContent();
-					break;
-				case "type":
-					artifact.packaging = item.getTextContent();
-					break;
-				case "optional":
-					artifact.optional = Boolean
-							.parseBoolean(item.getTextContent());
-					break;
-				default:
-					// ignore
-				}
-			}
-			return artifact;
+		public long misses() {
+			return misses.get();
 		}
 
-		public static Path path(Artifact dependency, String extension) {
-			if (dependency.groupId == null) {
-				throw new IllegalStateException("groupId is null");
-			}
-			return Path.of(dependency.groupId.replace(".", "/"))
-					.resolve(dependency.artifactId)
-					.resolve(dependency.version)
-					.resolve(
-							dependency.artifactId + "-" + dependency.version
-									+ "." + extension
-					);
+		private static String key(Artifact artifact) {
+			return artifact.groupId + ":" + artifact.artifactId + ":"
+					+ artifact.version;
 		}
 
 	}
@@ -546,21 +4532,159 @@ public class MavenExecutor {
 		List<Artifact> dependencies = new ArrayList<>();
 		Map<String, String> properties = new HashMap<>();
 		String remote;
+		private Map<List<String>, Artifact> management;
+		private int managed;
 
 		public Collection<Artifact> dependencies(Predicate<Artifact> filter) {
 			Collection<Artifact> dependencies = new LinkedHashSet<>();
+			dependencies(filter, new HashSet<>(), dependencies);
+			return dependencies;
+		}
+
+		/**
+		 * The artifacts passing the filter with one version per groupId,
+		 * artifactId, classifier and type, in the order of
+		 * {@link #dependencies(Predicate)}. Like Maven the version nearest to
+		 * this artifact wins, the first declared one on a tie, and inherited
+		 * dependencies are as near as declared ones. Versions set through
+		 * dependencyManagement were already applied while resolving. Every
+		 * evicted artifact is put into {@code evictions} together with the
+		 * artifact that won over it and the subtrees of evicted artifacts are
+		 * left out.
+		 */
+		public Collection<Artifact> classPath(
+				Predicate<Artifact> filter,
+				Map<Artifact, Artifact> evictions
+		) {
+			Map<List<String>, Artifact> nearest = new HashMap<>();
+			if (filter.test(this)) {
+				nearest.put(managementKey(this), this);
+			}
+			Deque<Artifact> queue = new ArrayDeque<>();
+			queue.add(this);
+			while (!queue.isEmpty()) {
+				for (Artifact pom : queue.remove().hierarchy()) {
+					for (Artifact dependency : pom.dependencies) {
+						if (!filter.test(dependency)) {
+							continue;
+						}
+						Artifact winner = nearest.putIfAbsent(
+								managementKey(dependency),
+								dependency
+						);
+						if (winner == null) {
+							queue.add(dependency);
+						} else if (!winner.equals(dependency)) {
+							evictions.putIfAbsent(dependency, winner);
+						}
+					}
+				}
+			}
+			return dependencies(
+					filter.and(
+							artifact -> artifact.equals(
+									nearest.get(managementKey(artifact))
+							)
+					)
+			);
+		}
+
+		/**
+		 * Walks the graph depth first, visiting every artifact once, and
+		 * collects the artifacts passing the filter in the order they are first
+		 * seen.
+		 */
+		private void dependencies(
+				Predicate<Artifact> filter,
+				Set<Artifact> visited,
+				Collection<Artifact> dependencies
+		) {
+			if (!visited.add(this)) {
+				return;
+			}
 			if (filter.test(this)) {
 				dependencies.add(this);
 			}
 			if (parent != null) {
-				dependencies.addAll(parent.dependencies(filter));
+				parent.dependencies(filter, visited, dependencies);
 			}
 			for (Artifact dependency : this.dependencies) {
 				if (filter.test(dependency)) {
-					dependencies.addAll(dependency.dependencies(filter));
+					dependency.dependencies(filter, visited, dependencies);
 				}
 			}
-			return dependencies;
+		}
+
+		/**
+		 * Takes over what resolving an equal artifact found, keeping the scope
+		 * and optional flag of this occurrence.
+		 */
+		void share(Artifact resolved) {
+			parent = resolved.parent;
+			groupId = resolved.groupId;
+			artifactId = resolved.artifactId;
+			version = resolved.version;
+			packaging = resolved.packaging;
+			dependencyManagement = resolved.dependencyManagement;
+			dependencies = resolved.dependencies;
+			properties = resolved.properties;
+			remote = resolved.remote;
+		}
+
+		public Artifact copy() {
+			Artifact copy = new Artifact();
+			copy.groupId = groupId;
+			copy.artifactId = artifactId;
+			copy.version = version;
+			copy.packaging = packaging;
+			copy.classifier = classifier;
+			copy.scope = scope;
+			copy.optional = optional;
+			copy.remote = remote;
+			return copy;
+		}
+
+		/**
+		 * Index over {@link #dependencyManagement} holding the first version
+		 * and the first scope declared for each
+		 * {@link #managementKey(Artifact)}. It is rebuilt when entries were
+		 * added since it was last built, e.g. by an imported BOM.
+		 */
+		Map<List<String>, Artifact> management() {
+			if (management == null || managed != dependencyManagement.size()) {
+				management = new HashMap<>();
+				for (Artifact entry : dependencyManagement) {
+					Artifact merged = management.computeIfAbsent(
+							managementKey(entry),
+							key -> new Artifact()
+					);
+					if (merged.version == null) {
+						merged.version = entry.version;
+					}
+					if (merged.scope == null) {
+						merged.scope = entry.scope;
+					}
+				}
+				managed = dependencyManagement.size();
+			}
+			return management;
+		}
+
+		static List<String> managementKey(Artifact artifact) {
+			return Arrays.asList(
+					artifact.groupId,
+					artifact.artifactId,
+					artifact.classifier,
+					artifact.packaging
+			);
+		}
+
+		public String coordinates() {
+			return groupId + ":" + artifactId + ":" + version;
+		}
+
+		public boolean isSnapshot() {
+			return version != null && version.endsWith("-SNAPSHOT");
 		}
 
 		public List<Artifact> hierarchy() {
@@ -4,6 +4,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.nio.file.Path;
+import java.time.Duration;
 
 import org.junit.jupiter.api.Test;
 
@@ -71,6 +72,143 @@ public class MavenExecutorArgumentTests {
 		assertThat(executor.maven.settingsXml).isEqualTo(Path.of(settings));
 	}
 
+	@Test
+	public void testVerbose() {
+		MavenExecutor executor = parseArguments(
+				new String[] { "com.github.ArloL:newlinechecker:133576b455",
+						"--verbose" }
+		);
+		assertThat(executor.verbose).isTrue();
+	}
+
+	@Test
+	public void testStats() {
+		MavenExecutor executor = parseArguments(
+				new String[] { "com.github.ArloL:newlinechecker:133576b455",
+						"--stats", "--statsJson" }
+		);
+		assertThat(executor.stats).isTrue();
+		assertThat(executor.statsJson).isTrue();
+	}
+
+	@Test
+	public void testAot() {
+		MavenExecutor executor = parseArguments(
+				new String[] { "com.github.ArloL:newlinechecker:133576b455",
+						"--aot" }
+		);
+		assertThat(executor.aot).isTrue();
+	}
+
+	@Test
+	public void testBundle() {
+		MavenExecutor executor = parseArguments(
+				new String[] { "com.github.ArloL:newlinechecker:133576b455",
+						"--bundle" }
+		);
+		assertThat(executor.bundle).isTrue();
+	}
+
+	@Test
+	public void testWarmUp() {
+		MavenExecutor executor = parseArguments(
+				new String[] { "com.github.ArloL:newlinechecker:133576b455",
+						"--warmUp" }
+		);
+		assertThat(executor.warmUp).isTrue();
+	}
+
+	@Test
+	public void testDaemon() {
+		MavenExecutor executor = parseArguments(
+				new String[] { "--daemon", "--idleTimeout", "PT5M" }
+		);
+		assertThat(executor.daemon).isTrue();
+		assertThat(executor.idleTimeout).isEqualTo(Duration.ofMinutes(5));
+		assertThat(executor.artifact.groupId).isNull();
+	}
+
+	@Test
+	public void testUseDaemon() {
+		MavenExecutor executor = parseArguments(
+				new String[] { "com.github.ArloL:newlinechecker:133576b455",
+						"--useDaemon" }
+		);
+		assertThat(executor.useDaemon).isTrue();
+		assertThat(executor.daemonRequest()).startsWith(
+				"resolve",
+				"com.github.ArloL:newlinechecker:133576b455"
+		);
+		assertThat(executor.daemonRequest()).doesNotContain("--skipChecksums");
+
+		executor = parseArguments(
+				new String[] { "com.github.ArloL:newlinechecker:133576b455",
+						"--useDaemon", "--skipChecksums", "--pomCacheSize",
+						"10" }
+		);
+		assertThat(executor.daemonRequest()).contains("--skipChecksums")
+				.containsSequence("--pomCacheSize", "10");
+	}
+
+	@Test
+	public void testBatch() {
+		MavenExecutor executor = parseArguments(
+				new String[] { "--batch", "-", "--parallelism", "4" }
+		);
+		assertThat(executor.batch).isEqualTo("-");
+		assertThat(executor.maven.parallelism).isEqualTo(4);
+	}
+
+	@Test
+	public void testUpdatePolicy() {
+		MavenExecutor executor = parseArguments(
+				new String[] { "com.github.ArloL:newlinechecker:LATEST",
+						"--updatePolicy", "interval:30" }
+		);
+		assertThat(executor.maven.updatePolicy).isEqualTo("interval:30");
+		assertThat(MavenExecutor.Maven.updateInterval("interval:30"))
+				.isEqualTo(Duration.ofMinutes(30));
+		assertThat(executor.daemonRequest())
+				.containsSequence("--updatePolicy", "interval:30");
+		assertThatThrownBy(
+				() -> parseArguments(
+						new String[] { "com.github.ArloL:newlinechecker:LATEST",
+								"--updatePolicy", "hourly" }
+				)
+		).isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("Unknown update policy");
+	}
+
+	@Test
+	public void testParallelism() {
+		MavenExecutor executor = parseArguments(
+				new String[] { "com.github.ArloL:newlinechecker:133576b455",
+						"--parallelism", "4" }
+		);
+		assertThat(executor.maven.parallelism).isEqualTo(4);
+	}
+
+	@Test
+	public void testCacheDirectory() {
+		String cacheDirectory = "/some/cache";
+		MavenExecutor executor = parseArguments(
+				new String[] { "com.github.ArloL:newlinechecker:133576b455",
+						"--cacheDirectory", cacheDirectory, "--refresh" }
+		);
+		assertThat(executor.maven.cacheDirectory)
+				.isEqualTo(Path.of(cacheDirectory));
+		assertThat(executor.refresh).isTrue();
+	}
+
+	@Test
+	public void testRaceRepositories() {
+		MavenExecutor executor = parseArguments(
+				new String[] { "com.github.ArloL:newlinechecker:133576b455",
+						"--raceRepositories" }
+		);
+		assertThat(executor.maven.raceRepositories).isTrue();
+	}
+
 	@Test
 	public void testPassthroughArguments() {
 		MavenExecutor executor = parseArguments(
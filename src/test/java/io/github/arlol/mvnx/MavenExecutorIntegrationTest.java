@@ -1,34 +1,444 @@
 package io.github.arlol.mvnx;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Stream;
 
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.arlol.mvnx.MavenExecutor.Artifact;
+import io.github.arlol.mvnx.MavenExecutor.Daemon;
+import io.github.arlol.mvnx.MavenExecutor.Lockfile;
+import io.github.arlol.mvnx.MavenExecutor.Maven;
 
 public class MavenExecutorIntegrationTest {
 
 	@Test
-	public void testPrint() throws Exception {
-		Path repository = TestPaths.get("maven-repository");
+	public void testPrint(@TempDir Path cacheDirectory) throws Exception {
 		// Overwrite repositories to ensure offline usage
-		MavenExecutor.main(
-				new String[] { "io.github.arlol:print:0.0.1", "--mainClass",
-						"io.github.arlol.print.App", "--repositories",
-						"http://localhost:62085", "--localRepository",
-						repository.toString() }
+		MavenExecutor.main(print(cacheDirectory));
+	}
+
+	@Test
+	public void testPrintFromLockfile(@TempDir Path cacheDirectory)
+			throws Exception {
+		String[] arguments = print(cacheDirectory);
+
+		MavenExecutor cold = new MavenExecutor().parseArguments(arguments);
+		cold.execute();
+		assertThat(cold.lockfile()).exists();
+		assertThat(cold.maven.pomCache.misses()).isPositive();
+
+		MavenExecutor warm = new MavenExecutor().parseArguments(arguments);
+		warm.execute();
+		assertThat(warm.maven.pomCache.misses()).isZero();
+		assertThat(warm.maven.pomCache.hits()).isZero();
+	}
+
+	@Test
+	public void testPrintWithAotCache(@TempDir Path cacheDirectory)
+			throws Exception {
+		String[] arguments = print(cacheDirectory, "--aot");
+
+		MavenExecutor cold = new MavenExecutor().parseArguments(arguments);
+		cold.execute();
+		assertThat(cold.exitStatus).isZero();
+		try (Stream<Path> caches = Files.list(cacheDirectory.resolve("aot"))) {
+			assertThat(caches).singleElement()
+					.satisfies(cache -> assertThat(cache).hasExtension("aot"));
+		}
+
+		MavenExecutor warm = new MavenExecutor().parseArguments(arguments);
+		warm.execute();
+		assertThat(warm.exitStatus).isZero();
+		try (Stream<Path> caches = Files.list(cacheDirectory.resolve("aot"))) {
+			assertThat(caches).hasSize(1);
+		}
+	}
+
+	@Test
+	public void testPrintWithBundle(@TempDir Path cacheDirectory)
+			throws Exception {
+		String[] arguments = print(cacheDirectory, "--bundle");
+
+		for (int run = 0; run < 2; run++) {
+			MavenExecutor executor = new MavenExecutor()
+					.parseArguments(arguments);
+			executor.execute();
+			assertThat(executor.maven.stats.count("bundle")).isEqualTo(1);
+			try (Stream<Path> bundles = Files
+					.list(cacheDirectory.resolve("bundles"))) {
+				assertThat(bundles).singleElement()
+						.satisfies(
+								bundle -> assertThat(bundle).hasExtension("jar")
+						);
+			}
+		}
+	}
+
+	@Test
+	public void testPrintWithWarmUp(@TempDir Path cacheDirectory)
+			throws Exception {
+		MavenExecutor executor = new MavenExecutor()
+				.parseArguments(print(cacheDirectory, "--warmUp"));
+		executor.execute();
+		assertThat(executor.maven.stats.count("warmup")).isEqualTo(1);
+		// the jar was open before the main method started
+		assertThat(executor.maven.stats.warmJars).isEqualTo(1);
+		assertThat(executor.maven.stats.report(executor.maven))
+				.contains("saved an estimated", "opening 1 of 1 jars");
+	}
+
+	@Test
+	public void testPrintThroughDaemon(@TempDir Path cacheDirectory)
+			throws Exception {
+		String[] arguments = print(cacheDirectory, "--useDaemon", "--refresh");
+		Daemon daemon = new Daemon(
+				cacheDirectory.resolve("daemon.sock"),
+				Duration.ofMinutes(1)
+		);
+		Thread server = Thread.ofVirtual().start(() -> {
+			try {
+				daemon.run();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		try {
+			MavenExecutor cold = new MavenExecutor().parseArguments(arguments);
+			cold.execute();
+			assertThat(cold.maven.pomCache.misses()).isZero();
+			assertThat(daemon.mavens()).hasSize(1);
+			Maven warmed = daemon.mavens().values().iterator().next();
+			assertThat(warmed.pomCache.misses()).isPositive();
+			long misses = warmed.pomCache.misses();
+
+			MavenExecutor warm = new MavenExecutor().parseArguments(arguments);
+			warm.execute();
+			assertThat(warm.maven.pomCache.misses()).isZero();
+			assertThat(warmed.pomCache.misses()).isEqualTo(misses);
+			assertThat(warmed.pomCache.hits()).isPositive();
+
+			// other arguments get their own Maven but the same cache files
+			new MavenExecutor()
+					.parseArguments(
+							print(
+									cacheDirectory,
+									"--useDaemon",
+									"--refresh",
+									"--parallelism",
+									"1"
+							)
+					)
+					.execute();
+			assertThat(daemon.mavens()).hasSize(2);
+			assertThat(daemon.mavens().values())
+					.extracting(Maven::localIndex, Maven::repositoryCache)
+					.containsOnly(
+							tuple(warmed.localIndex(), warmed.repositoryCache())
+					);
+
+			assertThat(
+					Daemon.send(
+							cacheDirectory.resolve("daemon.sock"),
+							List.of("invalidate")
+					)
+			).contains(List.of("Invalidated 2 caches"));
+			assertThat(daemon.mavens()).isEmpty();
+		} finally {
+			Daemon.send(cacheDirectory.resolve("daemon.sock"), List.of("stop"));
+			server.join();
+		}
+		assertThat(cacheDirectory.resolve("daemon.sock")).doesNotExist();
+	}
+
+	@Test
+	public void testDaemonFetchesDeletedJars(
+			@TempDir Path localRepository,
+			@TempDir Path cacheDirectory
+	) throws Exception {
+		Path jar = localRepository
+				.resolve("io/github/arlol/print/0.0.1/print-0.0.1.jar");
+		Daemon daemon = new Daemon(
+				cacheDirectory.resolve("daemon.sock"),
+				Duration.ofMinutes(1)
+		);
+		Thread server = Thread.ofVirtual().start(() -> {
+			try {
+				daemon.run();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		try (RepositoryServer repository = new RepositoryServer(
+				TestPaths.get("maven-repository")
+		)) {
+			String[] arguments = print(
+					cacheDirectory,
+					"--repositories",
+					repository.url(),
+					"--localRepository",
+					localRepository.toString(),
+					"--saveToLocalRepository",
+					"--useDaemon",
+					"--refresh"
+			);
+			new MavenExecutor().parseArguments(arguments).execute();
+			Files.delete(jar);
+
+			MavenExecutor warm = new MavenExecutor().parseArguments(arguments);
+			warm.execute();
+			assertThat(jar).exists();
+			// the daemon fetched it again, the launch did not resolve itself
+			assertThat(warm.maven.pomCache.misses()).isZero();
+		} finally {
+			Daemon.send(cacheDirectory.resolve("daemon.sock"), List.of("stop"));
+			server.join();
+		}
+	}
+
+	@Test
+	public void testDaemonStopsWhenIdle(@TempDir Path cacheDirectory)
+			throws Exception {
+		try (Daemon daemon = new Daemon(
+				cacheDirectory.resolve("daemon.sock"),
+				Duration.ofMillis(100)
+		)) {
+			assertTimeoutPreemptively(Duration.ofSeconds(10), daemon::run);
+		}
+		assertThat(
+				Daemon.send(
+						cacheDirectory.resolve("daemon.sock"),
+						List.of("ping")
+				)
+		).isEmpty();
+	}
+
+	@Test
+	public void testBatch(
+			@TempDir Path repository,
+			@TempDir Path cacheDirectory
+	) throws Exception {
+		new RepositoryGenerator().generate(repository);
+		Path batch = cacheDirectory.resolve("batch.txt");
+		Files.writeString(
+				batch,
+				String.join(
+						"\n",
+						"# tools to warm",
+						"generated:root:1",
+						"",
+						"generated:level1-2:1",
+						"generated:level3-0:1",
+						"generated:missing:1"
+				)
+		);
+		String[] arguments = new String[] { "--batch", batch.toString(),
+				"--repositories", "http://localhost:62085", "--localRepository",
+				repository.toString(), "--cacheDirectory",
+				cacheDirectory.toString() };
+
+		MavenExecutor cold = new MavenExecutor().parseArguments(arguments);
+		List<List<String>> report = cold.batch();
+		assertThat(report).extracting(line -> line.get(0))
+				.containsExactly(
+						"generated:root:1",
+						"generated:level1-2:1",
+						"generated:level3-0:1",
+						"generated:missing:1"
+				);
+		assertThat(report).extracting(line -> line.get(1))
+				.containsExactly("resolved", "resolved", "resolved", "failed");
+		assertThat(cold.exitStatus).isEqualTo(1);
+		for (List<String> line : report.subList(0, 3)) {
+			assertThat(Lockfile.read(Path.of(line.get(2)))).isNotNull();
+		}
+		assertThat(cold.maven.pomCache.hits()).isPositive();
+
+		MavenExecutor warm = new MavenExecutor().parseArguments(arguments);
+		assertThat(warm.batch()).extracting(line -> line.get(1))
+				.containsExactly("locked", "locked", "locked", "failed");
+		assertThat(warm.maven.pomCache.misses()).isEqualTo(1);
+	}
+
+	@Test
+	public void testGeneratedRepositoryColdAndWarm(
+			@TempDir Path remoteRepository,
+			@TempDir Path localRepository,
+			@TempDir Path cacheDirectory
+	) throws Exception {
+		RepositoryGenerator generator = new RepositoryGenerator();
+		generator.depth = 8;
+		generator.width = 50;
+		generator.fanOut = 3;
+		generator.boms = 4;
+		generator.managed = 500;
+		generator.propertyChain = 3;
+		Collection<Artifact> classPath = resolveColdAndWarm(
+				generator,
+				remoteRepository,
+				localRepository,
+				cacheDirectory
+		);
+		assertThat(classPath).hasSize(1 + 3 + 9 + 27 + 50 * 5);
+	}
+
+	/**
+	 * Resolves thousands of artifacts, so it is excluded by default. Run it
+	 * with {@code mvn -P slow test -Dtest=MavenExecutorIntegrationTest}. The
+	 * graph is wide rather than deep as every path gets its own node, and it
+	 * has no BOM as every artifact keeps its own copy of the imported
+	 * management.
+	 */
+	@Test
+	@Tag("slow")
+	public void testLargeGeneratedRepositoryColdAndWarm(
+			@TempDir Path remoteRepository,
+			@TempDir Path localRepository,
+			@TempDir Path cacheDirectory
+	) throws Exception {
+		RepositoryGenerator generator = new RepositoryGenerator();
+		generator.depth = 4;
+		generator.width = 3000;
+		generator.fanOut = 8;
+		generator.boms = 0;
+		Collection<Artifact> classPath = resolveColdAndWarm(
+				generator,
+				remoteRepository,
+				localRepository,
+				cacheDirectory
+		);
+		assertThat(classPath).hasSize(1 + 8 + 64 + 512 + 3000);
+	}
+
+	/**
+	 * Resolves the generated root through a {@link RepositoryServer} into an
+	 * empty local repository, then again without any further request.
+	 *
+	 * @return the class path of the root
+	 */
+	private static Collection<Artifact> resolveColdAndWarm(
+			RepositoryGenerator generator,
+			Path remoteRepository,
+			Path localRepository,
+			Path cacheDirectory
+	) throws IOException {
+		String coordinates = generator.generate(remoteRepository);
+		try (RepositoryServer server = new RepositoryServer(remoteRepository)) {
+			server.latency = Duration.ofMillis(2);
+
+			Maven cold = maven(server, localRepository, cacheDirectory);
+			Collection<Artifact> classPath = resolve(cold, coordinates);
+			for (Artifact dependency : classPath) {
+				assertThat(Path.of(cold.uri(dependency, dependency.packaging)))
+						.exists();
+			}
+			long requests = server.requests();
+			assertThat(requests).isGreaterThanOrEqualTo(2 * classPath.size());
+
+			Maven warm = maven(server, localRepository, cacheDirectory);
+			assertThat(resolve(warm, coordinates)).isEqualTo(classPath);
+			assertThat(server.requests()).isEqualTo(requests);
+			return classPath;
+		}
+	}
+
+	@Test
+	public void testGeneratedRepositoryErrors(
+			@TempDir Path remoteRepository,
+			@TempDir Path localRepository,
+			@TempDir Path cacheDirectory
+	) throws Exception {
+		String coordinates = new RepositoryGenerator()
+				.generate(remoteRepository);
+		try (RepositoryServer server = new RepositoryServer(remoteRepository)) {
+			server.errorRate = 1;
+			Maven maven = maven(server, localRepository, cacheDirectory);
+			assertThatThrownBy(() -> resolve(maven, coordinates))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessageStartingWith("Download failed");
+			assertThat(server.errors()).isEqualTo(server.requests())
+					.isPositive();
+		}
+	}
+
+	/**
+	 * The arguments to run the print artifact from the test repository offline,
+	 * followed by the given options, which may override them.
+	 */
+	private static String[] print(Path cacheDirectory, String... options)
+			throws IOException {
+		List<String> arguments = new ArrayList<>(
+				List.of(
+						"io.github.arlol:print:0.0.1",
+						"--mainClass",
+						"io.github.arlol.print.App",
+						"--repositories",
+						"http://localhost:62085",
+						"--localRepository",
+						TestPaths.get("maven-repository").toString(),
+						"--cacheDirectory",
+						cacheDirectory.toString()
+				)
+		);
+		arguments.addAll(Arrays.asList(options));
+		return arguments.toArray(String[]::new);
+	}
+
+	private static Maven maven(
+			RepositoryServer server,
+			Path localRepository,
+			Path cacheDirectory
+	) {
+		Maven maven = new Maven();
+		maven.saveToLocalRepository = true;
+		maven.localRepository = localRepository;
+		maven.cacheDirectory = cacheDirectory;
+		maven.repositories = List.of(server.url());
+		return maven;
+	}
+
+	private static Collection<Artifact> resolve(
+			Maven maven,
+			String coordinates
+	) {
+		String[] parts = coordinates.split(":");
+		Artifact artifact = new Artifact();
+		artifact.groupId = parts[0];
+		artifact.artifactId = parts[1];
+		artifact.version = parts[2];
+		maven.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
+		return artifact.classPath(
+				MavenExecutor::classPathFilter,
+				new LinkedHashMap<>()
 		);
 	}
 
 	@Test
-	public void testException() throws Exception {
+	public void testException(@TempDir Path cacheDirectory) throws Exception {
 		Path repository = TestPaths.get("maven-repository");
 		// Overwrite repositories to ensure offline usage
 		assertThatThrownBy(() -> {
 			MavenExecutor.main(
 					new String[] { "io.github.arlol:exception:0.0.1",
 							"--repositories", "http://localhost:62085",
-							"--localRepository", repository.toString() }
+							"--localRepository", repository.toString(),
+							"--cacheDirectory", cacheDirectory.toString() }
 			);
 		}).hasCause(new IllegalArgumentException("Expection ;)"));
 	}
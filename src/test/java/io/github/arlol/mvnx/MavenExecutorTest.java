@@ -1,21 +1,69 @@
 package io.github.arlol.mvnx;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 
 import io.github.arlol.mvnx.MavenExecutor.Artifact;
 import io.github.arlol.mvnx.MavenExecutor.Maven;
+import io.github.arlol.mvnx.MavenExecutor.MemoryClassLoader;
+import io.github.arlol.mvnx.MavenExecutor.PropertyScope;
+import io.github.arlol.mvnx.MavenExecutor.RepositoryCache;
+import io.github.arlol.mvnx.MavenExecutor.Stats;
+import io.github.arlol.mvnx.MavenExecutor.VersionRange;
 
 public class MavenExecutorTest {
 
+	@TempDir
+	Path cacheDirectory;
+
 	@Test
 	public void testUserHomeM2() {
 		Path userHomeM2 = MavenExecutor.Maven.userHomeM2(Path.of("/root"));
@@ -97,6 +145,14 @@ public class MavenExecutorTest {
 				.localRepository(Path.of("/root/.m2"), settingsXml);
 	}
 
+	private Maven maven(Path localRepository, String... repositories) {
+		Maven maven = new MavenExecutor.Maven();
+		maven.localRepository = localRepository;
+		maven.cacheDirectory = cacheDirectory;
+		maven.repositories = List.of(repositories);
+		return maven;
+	}
+
 	@Test
 	public void testPomWithNoDependenciesAndDependencyManagement()
 			throws Exception {
@@ -106,6 +162,67 @@ public class MavenExecutorTest {
 		assertThat(artifact.dependencyManagement).hasSize(4);
 	}
 
+	@Test
+	public void testPomReader() throws Exception {
+		String pom = """
+				<?xml version="1.0"?>
+				<!DOCTYPE project [<!ENTITY external SYSTEM "file:///etc/hostname">]>
+				<project>
+					<parent>
+						<groupId>org.example</groupId>
+						<artifactId>parent</artifactId>
+						<version>1</version>
+					</parent>
+					<artifactId>child</artifactId>
+					<build><plugins><plugin><version>2</version></plugin></plugins></build>
+					<properties>
+						<slf4j.version>1.7.30</slf4j.version>
+					</properties>
+					<dependencyManagement>
+						<dependencies>
+							<dependency>
+								<groupId>org.example</groupId>
+								<artifactId>bom</artifactId>
+								<version>3</version>
+								<type>pom</type>
+								<scope>import</scope>
+							</dependency>
+						</dependencies>
+					</dependencyManagement>
+					<dependencies>
+						<dependency>
+							<groupId>org.slf4j</groupId>
+							<artifactId>slf4j-api</artifactId>
+							<version>${slf4j.version}</version>
+							<optional>true</optional>
+							<exclusions>
+								<exclusion>
+									<groupId>*</groupId>
+									<artifactId>*</artifactId>
+								</exclusion>
+							</exclusions>
+						</dependency>
+					</dependencies>
+				</project>
+				"""
+				.strip();
+		Artifact model = MavenExecutor.PomReader.read(
+				new ByteArrayInputStream(pom.getBytes(StandardCharsets.UTF_8))
+		);
+		assertThat(model.parent).isEqualTo(d("org.example:parent:1"));
+		assertThat(model.groupId).isNull();
+		assertThat(model.artifactId).isEqualTo("child");
+		assertThat(model.version).isNull();
+		assertThat(model.packaging).isNull();
+		assertThat(model.properties)
+				.containsExactly(Map.entry("slf4j.version", "1.7.30"));
+		assertThat(model.dependencyManagement)
+				.containsExactly(d("org.example:bom:3:pom", "import"));
+		assertThat(model.dependencies)
+				.containsExactly(d("org.slf4j:slf4j-api:${slf4j.version}"));
+		assertThat(model.dependencies.get(0).optional).isTrue();
+	}
+
 	@Test
 	public void testDependencyWithNoDependencies() throws Exception {
 		Collection<Artifact> dependencies = artifactDependencies(
@@ -243,6 +360,125 @@ public class MavenExecutorTest {
 		);
 	}
 
+	@Test
+	public void testManagePrefersNearestDeclaration() {
+		Artifact parent = new Artifact();
+		parent.dependencyManagement.add(d("org.slf4j:slf4j-api:1.7.25", null));
+		parent.dependencyManagement
+				.add(d("org.slf4j:slf4j-api:1.7.30", "test"));
+		Artifact child = new Artifact();
+		child.parent = parent;
+		child.dependencyManagement
+				.add(d("org.slf4j:slf4j-api:1.7.36", "runtime"));
+
+		Artifact dependency = d("org.slf4j:slf4j-api:1.0.0", null);
+		dependency.version = null;
+		Maven.manage(dependency, List.of(child));
+		assertThat(dependency.version).isEqualTo("1.7.25");
+		assertThat(dependency.scope).isEqualTo("test");
+
+		Artifact sources = d("org.slf4j:slf4j-api:1.0.0:jar:sources", null);
+		Maven.manage(sources, List.of(child));
+		assertThat(sources.version).isEqualTo("1.0.0");
+		assertThat(sources.scope).isEqualTo("compile");
+
+		parent.dependencyManagement
+				.add(d("org.slf4j:slf4j-api:2.0.0:jar:sources", "provided"));
+		Maven.manage(sources, List.of(child));
+		assertThat(sources.version).isEqualTo("2.0.0");
+		assertThat(sources.scope).isEqualTo("provided");
+	}
+
+	@Test
+	public void testSharedDependenciesAreResolvedOnce(
+			@TempDir Path localRepository
+	) throws Exception {
+		pom(localRepository, "test:a:1", "test:b:1", "test:c:1");
+		pom(localRepository, "test:b:1", "test:d:1");
+		pom(localRepository, "test:c:1", "test:d:1");
+		pom(localRepository, "test:d:1", "test:e:1", "test:a:1");
+		pom(localRepository, "test:e:1");
+		Maven maven = maven(localRepository);
+		Artifact artifact = d("test:a:1");
+		maven.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
+
+		Artifact b = artifact.dependencies.get(0);
+		Artifact c = artifact.dependencies.get(1);
+		assertThat(c.dependencies.get(0).dependencies)
+				.isSameAs(b.dependencies.get(0).dependencies);
+		assertThat(artifact.dependencies(MavenExecutor::classPathFilter))
+				.containsExactly(
+						d("test:a:1"),
+						d("test:b:1"),
+						d("test:d:1"),
+						d("test:e:1"),
+						d("test:c:1")
+				);
+	}
+
+	@Test
+	public void testClassPathKeepsNearestVersion(@TempDir Path localRepository)
+			throws Exception {
+		pom(localRepository, "test:a:1", "test:b:1", "test:c:1", "test:e:2");
+		pom(localRepository, "test:b:1", "test:d:1", "test:e:1");
+		pom(localRepository, "test:c:1", "test:d:2");
+		pom(localRepository, "test:d:1");
+		pom(localRepository, "test:d:2", "test:f:1");
+		pom(localRepository, "test:e:1");
+		pom(localRepository, "test:e:2");
+		pom(localRepository, "test:f:1");
+		Maven maven = maven(localRepository);
+		Artifact artifact = d("test:a:1");
+		maven.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
+
+		Map<Artifact, Artifact> evictions = new LinkedHashMap<>();
+		assertThat(
+				artifact.classPath(MavenExecutor::classPathFilter, evictions)
+		).containsExactly(
+				d("test:a:1"),
+				d("test:b:1"),
+				d("test:d:1"),
+				d("test:e:2"),
+				d("test:c:1")
+		);
+		// e is managed by the direct dependency of a and never conflicts
+		assertThat(evictions)
+				.containsExactly(Map.entry(d("test:d:2"), d("test:d:1")));
+		// d:2 is reached after d:1 at the same depth and can never win, so
+		// neither it nor its dependency f is fetched in advance
+		assertThat(maven.downloads)
+				.containsKey(Maven.path(d("test:d:1"), "jar"))
+				.doesNotContainKeys(
+						Maven.path(d("test:d:2"), "jar"),
+						Maven.path(d("test:f:1"), "jar")
+				);
+	}
+
+	@Test
+	public void testGeneratedRepository(@TempDir Path localRepository)
+			throws Exception {
+		RepositoryGenerator generator = new RepositoryGenerator();
+		generator.depth = 3;
+		generator.width = 10;
+		generator.fanOut = 3;
+		generator.managed = 5;
+		generator.propertyChain = 3;
+		Maven maven = maven(localRepository);
+		Artifact artifact = d(generator.generate(localRepository));
+		maven.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
+
+		assertThat(
+				artifact.classPath(
+						MavenExecutor::classPathFilter,
+						new LinkedHashMap<>()
+				)
+		).hasSize(1 + 3 + 9 + 10)
+				.allSatisfy(
+						dependency -> assertThat(dependency.version)
+								.isEqualTo("1")
+				);
+	}
+
 	@Test
 	public void testDependencyWithJgitDependencies() throws Exception {
 		Collection<Artifact> dependencies = artifactDependencies(
@@ -262,6 +498,1105 @@ public class MavenExecutorTest {
 		);
 	}
 
+	@Test
+	public void testParallelResolutionMatchesSequential() throws Exception {
+		Artifact sequential = artifact(
+				"io.github.arlol:newlinechecker:0.0.1-SNAPSHOT",
+				1
+		);
+		Artifact parallel = artifact(
+				"io.github.arlol:newlinechecker:0.0.1-SNAPSHOT",
+				8
+		);
+		assertThat(parallel.dependencies(MavenExecutor::classPathFilter))
+				.containsExactlyElementsOf(
+						sequential.dependencies(MavenExecutor::classPathFilter)
+				);
+		assertThat(parallel.parent).isEqualTo(sequential.parent);
+		assertThat(parallel.dependencyManagement)
+				.containsExactlyElementsOf(sequential.dependencyManagement);
+	}
+
+	@Test
+	public void testPomCacheReusesSharedParents() throws Exception {
+		Maven maven = maven();
+		maven.resolve(
+				d("io.github.arlol:newlinechecker:0.0.1-SNAPSHOT"),
+				List.of(),
+				MavenExecutor::classPathFilter
+		);
+		long misses = maven.pomCache.misses();
+		assertThat(maven.pomCache.hits()).isPositive();
+		assertThat(maven.pomCache.size()).isEqualTo(misses);
+
+		maven.resolve(
+				d("io.github.arlol:newlinechecker:0.0.1-SNAPSHOT"),
+				List.of(),
+				MavenExecutor::classPathFilter
+		);
+		assertThat(maven.pomCache.misses()).isEqualTo(misses);
+	}
+
+	@Test
+	public void testPomCacheEvictsLeastRecentlyUsed() throws Exception {
+		Maven maven = maven();
+		maven.pomCache = new MavenExecutor.PomCache(2);
+		maven.resolve(
+				d("io.github.arlol:newlinechecker:0.0.1-SNAPSHOT"),
+				List.of(),
+				MavenExecutor::classPathFilter
+		);
+		assertThat(maven.pomCache.size()).isEqualTo(2);
+	}
+
+	@Test
+	public void testRemovesSnapshots() throws Exception {
+		Maven maven = maven();
+		maven.resolve(
+				d("io.github.arlol:newlinechecker:0.0.1-SNAPSHOT"),
+				List.of(),
+				MavenExecutor::classPathFilter
+		);
+		int size = maven.pomCache.size();
+		assertThat(maven.downloads.keySet())
+				.anyMatch(path -> path.toString().contains("-SNAPSHOT"));
+		maven.removeSnapshots();
+		assertThat(maven.pomCache.size()).isEqualTo(size - 1);
+		assertThat(maven.downloads.keySet()).isNotEmpty()
+				.noneMatch(path -> path.toString().contains("-SNAPSHOT"));
+		assertThat(
+				maven.pomCache.contains(
+						d("io.github.arlol:newlinechecker:0.0.1-SNAPSHOT")
+				)
+		).isFalse();
+		assertThat(maven.pomCache.contains(d("org.slf4j:slf4j-api:1.7.30")))
+				.isTrue();
+	}
+
+	@Test
+	public void testTransportReusesConnections(@TempDir Path localRepository)
+			throws Exception {
+		Path repository = TestPaths.get("maven-repository");
+		Set<Integer> ports = ConcurrentHashMap.newKeySet();
+		HttpServer server = server(exchange -> {
+			ports.add(exchange.getRemoteAddress().getPort());
+			serve(repository, exchange);
+		});
+		try {
+			Maven maven = maven(localRepository, url(server));
+			maven.parallelism = 8;
+			maven.resolve(
+					d("io.github.arlol:newlinechecker:0.0.1-SNAPSHOT"),
+					List.of(),
+					MavenExecutor::classPathFilter
+			);
+			assertThat(maven.transport.requests()).isGreaterThan(10);
+			assertThat(ports)
+					.hasSizeLessThan((int) maven.transport.requests() / 2);
+			assertThat((long) ports.size()).isLessThanOrEqualTo(
+					maven.transport.estimatedConnections()
+			);
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testChecksumMismatchIsRetried(
+			@TempDir Path remoteRepository,
+			@TempDir Path localRepository
+	) throws Exception {
+		checksummed(remoteRepository);
+		AtomicInteger jarRequests = new AtomicInteger();
+		HttpServer server = server(exchange -> {
+			String path = exchange.getRequestURI().getPath();
+			if (path.endsWith(".jar") && jarRequests.incrementAndGet() == 1) {
+				corrupt(remoteRepository, exchange);
+			} else {
+				serve(remoteRepository, exchange);
+			}
+		});
+		try {
+			Maven maven = maven(localRepository, url(server));
+			maven.saveToLocalRepository = true;
+			Artifact artifact = d("io.github.arlol:print:0.0.1");
+			maven.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
+			Path jar = Path.of(maven.uri(artifact, "jar"));
+			assertThat(jar).hasSameBinaryContentAs(
+					remoteRepository.resolve(Maven.path(artifact, "jar"))
+			);
+			assertThat(jarRequests).hasValue(2);
+			try (Stream<Path> files = Files.list(jar.getParent())) {
+				assertThat(files).noneMatch(
+						file -> file.getFileName().toString().endsWith(".part")
+				);
+			}
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testChecksumMismatchFails(
+			@TempDir Path remoteRepository,
+			@TempDir Path localRepository
+	) throws Exception {
+		checksummed(remoteRepository);
+		HttpServer server = server(exchange -> {
+			if (exchange.getRequestURI().getPath().endsWith(".jar")) {
+				corrupt(remoteRepository, exchange);
+			} else {
+				serve(remoteRepository, exchange);
+			}
+		});
+		try {
+			Maven maven = maven(localRepository, url(server));
+			Artifact artifact = d("io.github.arlol:print:0.0.1");
+			maven.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
+			assertThatThrownBy(() -> maven.uri(artifact, "jar"))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessageStartingWith("Checksum mismatch");
+
+			maven.verifyChecksums = false;
+			maven.downloads.clear();
+			assertThat(maven.uri(artifact, "jar")).isNotNull();
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testChecksumsAreCached(
+			@TempDir Path remoteRepository,
+			@TempDir Path localRepository
+	) throws Exception {
+		checksummed(remoteRepository);
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer server = server(exchange -> {
+			requests.add(exchange.getRequestURI().getPath());
+			serve(remoteRepository, exchange);
+		});
+		try {
+			for (int run = 0; run < 2; run++) {
+				requests.clear();
+				Maven maven = maven(localRepository, url(server));
+				Artifact artifact = d("io.github.arlol:print:0.0.1");
+				maven.resolve(
+						artifact,
+						List.of(),
+						MavenExecutor::classPathFilter
+				);
+				assertThat(maven.uri(artifact, "jar")).isNotNull();
+				maven.repositoryCache().write();
+				if (run == 0) {
+					assertThat(requests)
+							.anyMatch(path -> path.endsWith(".sha1"));
+				}
+			}
+			assertThat(requests).hasSize(2)
+					.noneMatch(path -> path.endsWith(".sha1"));
+			assertThat(cacheDirectory.resolve("checksums.tsv")).content()
+					.contains("print-0.0.1.jar\t");
+			assertThat(cacheDirectory.resolve("repositories.tsv")).content()
+					.doesNotContain("sha1");
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testSnapshotsAreRevalidated(
+			@TempDir Path remoteRepository,
+			@TempDir Path localRepository
+	) throws Exception {
+		Path version = remoteRepository.resolve("example/snapshot/1-SNAPSHOT");
+		Files.createDirectories(version);
+		Files.writeString(
+				version.resolve("snapshot-1-SNAPSHOT.pom"),
+				"<project><groupId>example</groupId>"
+						+ "<artifactId>snapshot</artifactId>"
+						+ "<version>1-SNAPSHOT</version></project>"
+		);
+		Files.writeString(version.resolve("snapshot-1-SNAPSHOT.jar"), "first");
+		List<Integer> statuses = new CopyOnWriteArrayList<>();
+		HttpServer server = server(exchange -> {
+			Path file = remoteRepository
+					.resolve(exchange.getRequestURI().getPath().substring(1));
+			if (!Files.isRegularFile(file)) {
+				exchange.sendResponseHeaders(404, -1);
+				exchange.close();
+				return;
+			}
+			byte[] body = Files.readAllBytes(file);
+			String etag;
+			try {
+				etag = "\"" + HexFormat.of()
+						.formatHex(
+								MessageDigest.getInstance("SHA-1").digest(body)
+						) + "\"";
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			exchange.getResponseHeaders().set("ETag", etag);
+			if (etag.equals(
+					exchange.getRequestHeaders().getFirst("If-None-Match")
+			)) {
+				statuses.add(304);
+				exchange.sendResponseHeaders(304, -1);
+				exchange.close();
+				return;
+			}
+			statuses.add(200);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream responseBody = exchange.getResponseBody()) {
+				responseBody.write(body);
+			}
+			exchange.close();
+		});
+		Path jar = localRepository
+				.resolve("example/snapshot/1-SNAPSHOT/snapshot-1-SNAPSHOT.jar");
+		try {
+			for (int run = 0; run < 3; run++) {
+				if (run == 2) {
+					Files.writeString(
+							version.resolve("snapshot-1-SNAPSHOT.jar"),
+							"second"
+					);
+				}
+				statuses.clear();
+				assertThat(snapshot(localRepository, cacheDirectory, server))
+						.isEqualTo(jar.toUri());
+				switch (run) {
+				case 0 -> assertThat(statuses).containsExactly(200, 200);
+				case 1 -> assertThat(statuses).containsExactly(304, 304);
+				default -> assertThat(statuses).containsExactly(304, 200);
+				}
+				assertThat(
+						jar.resolveSibling(jar.getFileName() + ".validators")
+				).exists();
+			}
+			assertThat(jar).hasContent("second");
+		} finally {
+			server.stop(0);
+		}
+		assertThat(snapshot(localRepository, cacheDirectory, server))
+				.isEqualTo(jar.toUri());
+		assertThat(jar).hasContent("second");
+	}
+
+	private URI snapshot(
+			Path localRepository,
+			Path cacheDirectory,
+			HttpServer server
+	) {
+		Maven maven = maven(localRepository, url(server));
+		maven.parallelism = 1;
+		maven.saveToLocalRepository = true;
+		Artifact artifact = d("example:snapshot:1-SNAPSHOT");
+		maven.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
+		return maven.uri(artifact, "jar");
+	}
+
+	@Test
+	public void testVersionOrder() {
+		List<String> versions = List.of(
+				"1.0-alpha-1",
+				"1.0-beta",
+				"1.0-rc1",
+				"1.0-SNAPSHOT",
+				"1.0",
+				"1.0-sp",
+				"1.0.1",
+				"1.10"
+		);
+		assertThat(versions).isSortedAccordingTo(VersionRange::compare);
+		assertThat(VersionRange.compare("1", "1.0.0")).isZero();
+		assertThat(VersionRange.compare("1.0-ga", "1.0")).isZero();
+	}
+
+	@Test
+	public void testVersionRange() {
+		assertThat(VersionRange.contains("[1.0,2.0)", "1.0")).isTrue();
+		assertThat(VersionRange.contains("[1.0,2.0)", "2.0")).isFalse();
+		assertThat(VersionRange.contains("(1.0,)", "1.0")).isFalse();
+		assertThat(VersionRange.contains("(,1.0]", "1.0")).isTrue();
+		assertThat(VersionRange.contains("[1.5]", "1.5.0")).isTrue();
+		assertThat(VersionRange.contains("(,1.0),[1.2,)", "1.1")).isFalse();
+		assertThat(VersionRange.contains("(,1.0),[1.2,)", "1.3")).isTrue();
+	}
+
+	@Test
+	public void testMetadataVersions(
+			@TempDir Path remoteRepository,
+			@TempDir Path localRepository
+	) throws Exception {
+		Path tool = remoteRepository.resolve("example/tool");
+		for (String version : List.of("1.5", "2.0")) {
+			Files.createDirectories(tool.resolve(version));
+			Files.writeString(
+					tool.resolve(version).resolve("tool-" + version + ".pom"),
+					"<project><groupId>example</groupId>"
+							+ "<artifactId>tool</artifactId><version>" + version
+							+ "</version><packaging>pom</packaging></project>"
+			);
+		}
+		Files.writeString(
+				tool.resolve("maven-metadata.xml"),
+				"<metadata><groupId>example</groupId>"
+						+ "<artifactId>tool</artifactId><versioning>"
+						+ "<latest>2.1-SNAPSHOT</latest><release>2.0</release>"
+						+ "<versions><version>1.0</version><version>1.5</version>"
+						+ "<version>2.0</version><version>2.1-SNAPSHOT</version>"
+						+ "</versions></versioning></metadata>"
+		);
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer server = server(exchange -> {
+			requests.add(exchange.getRequestURI().getPath());
+			serve(remoteRepository, exchange);
+		});
+		try {
+			Maven maven = maven(localRepository, url(server));
+			Artifact release = d("example:tool:RELEASE");
+			maven.resolve(release, List.of(), MavenExecutor::classPathFilter);
+			assertThat(release.version).isEqualTo("2.0");
+			Artifact range = d("example:tool:[1.0,2.0)");
+			maven.resolve(range, List.of(), MavenExecutor::classPathFilter);
+			assertThat(range.version).isEqualTo("1.5");
+			assertThat(maven.version(d("example:tool:LATEST")))
+					.isEqualTo("2.1-SNAPSHOT");
+			assertThat(requests)
+					.filteredOn(path -> path.endsWith("maven-metadata.xml"))
+					.hasSize(1);
+
+			requests.clear();
+			Maven daily = maven(localRepository, url(server));
+			assertThat(daily.version(d("example:tool:RELEASE")))
+					.isEqualTo("2.0");
+			assertThat(requests).isEmpty();
+
+			daily.updatePolicy = "always";
+			assertThat(daily.version(d("example:tool:RELEASE")))
+					.isEqualTo("2.0");
+			assertThat(requests).contains("/example/tool/maven-metadata.xml");
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testMetadataMissesFollowUpdatePolicy(
+			@TempDir Path emptyRepository,
+			@TempDir Path localRepository
+	) throws Exception {
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer server = server(exchange -> {
+			requests.add(exchange.getRequestURI().getPath());
+			serve(emptyRepository, exchange);
+		});
+		try {
+			for (String updatePolicy : List.of("daily", "always")) {
+				requests.clear();
+				Maven maven = maven(localRepository, url(server));
+				maven.cacheDirectory = cacheDirectory.resolve(updatePolicy);
+				maven.updatePolicy = updatePolicy;
+				for (int run = 0; run < 2; run++) {
+					assertThatThrownBy(
+							() -> maven.version(d("example:tool:RELEASE"))
+					).isInstanceOf(IllegalArgumentException.class);
+				}
+				assertThat(requests)
+						.hasSize("always".equals(updatePolicy) ? 2 : 1);
+			}
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testRangesSelectingOneVersionResolveOnce(
+			@TempDir Path remoteRepository,
+			@TempDir Path localRepository
+	) throws Exception {
+		pom(remoteRepository, "example:tool:1.5");
+		Files.writeString(
+				remoteRepository.resolve("example/tool/maven-metadata.xml"),
+				"<metadata><versioning><versions><version>1.0</version>"
+						+ "<version>1.5</version><version>2.0</version>"
+						+ "</versions></versioning></metadata>"
+		);
+		pom(
+				localRepository,
+				"test:app:1",
+				"example:tool:[1.0,2.0)",
+				"test:lib:1"
+		);
+		pom(localRepository, "test:lib:1", "example:tool:[1.5,2.0)");
+		HttpServer server = server(
+				exchange -> serve(remoteRepository, exchange)
+		);
+		try {
+			Maven maven = maven(localRepository, url(server));
+			Artifact app = d("test:app:1");
+			maven.resolve(app, List.of(), artifact -> true);
+			Artifact tool = app.dependencies.get(0);
+			Artifact again = app.dependencies.get(1).dependencies.get(0);
+			assertThat(tool.version).isEqualTo("1.5");
+			assertThat(again.version).isEqualTo("1.5");
+			assertThat(again.dependencies).isSameAs(tool.dependencies);
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testTimestampedSnapshots(
+			@TempDir Path remoteRepository,
+			@TempDir Path localRepository
+	) throws Exception {
+		Path version = remoteRepository.resolve("example/snap/1.0-SNAPSHOT");
+		Files.createDirectories(version);
+		Files.writeString(
+				version.resolve("maven-metadata.xml"),
+				"<metadata><versioning><snapshot>"
+						+ "<timestamp>20261018.120000</timestamp>"
+						+ "<buildNumber>3</buildNumber></snapshot>"
+						+ "<snapshotVersions><snapshotVersion>"
+						+ "<extension>jar</extension>"
+						+ "<value>1.0-20261018.120000-3</value>"
+						+ "</snapshotVersion></snapshotVersions>"
+						+ "</versioning></metadata>"
+		);
+		Files.writeString(
+				version.resolve("snap-1.0-20261018.120000-3.pom"),
+				"<project><groupId>example</groupId>"
+						+ "<artifactId>snap</artifactId>"
+						+ "<version>1.0-SNAPSHOT</version></project>"
+		);
+		Files.writeString(
+				version.resolve("snap-1.0-20261018.120000-3.jar"),
+				"timestamped"
+		);
+		HttpServer server = server(
+				exchange -> serve(remoteRepository, exchange)
+		);
+		try {
+			for (boolean save : List.of(false, true)) {
+				Maven maven = maven(localRepository, url(server));
+				maven.saveToLocalRepository = save;
+				Artifact artifact = d("example:snap:1.0-SNAPSHOT");
+				maven.resolve(
+						artifact,
+						List.of(),
+						MavenExecutor::classPathFilter
+				);
+				URI jar = maven.uri(artifact, "jar");
+				if (save) {
+					assertThat(Path.of(jar))
+							.hasFileName("snap-1.0-SNAPSHOT.jar")
+							.hasContent("timestamped");
+				} else {
+					assertThat(jar.getPath())
+							.endsWith("/snap-1.0-20261018.120000-3.jar");
+				}
+			}
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testLocalIndex(
+			@TempDir Path remoteRepository,
+			@TempDir Path localRepository
+	) throws Exception {
+		checksummed(remoteRepository);
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer server = server(exchange -> {
+			requests.add(exchange.getRequestURI().getPath());
+			serve(remoteRepository, exchange);
+		});
+		Artifact artifact = d("io.github.arlol:print:0.0.1");
+		Path pom = Maven.path(artifact, "pom");
+		Path jar = Maven.path(artifact, "jar");
+		try {
+			Maven cold = maven(localRepository, url(server));
+			cold.saveToLocalRepository = true;
+			cold.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
+			assertThat(cold.classPathUri(artifact))
+					.isEqualTo(localRepository.resolve(jar).toUri());
+			cold.localIndex().write();
+
+			Maven warm = maven(localRepository);
+			assertThat(warm.localIndex().exists(pom)).isTrue();
+			assertThat(warm.localIndex().exists(jar)).isTrue();
+			assertThat(warm.localIndex().exists(Path.of("missing.pom")))
+					.isFalse();
+
+			requests.clear();
+			Files.delete(localRepository.resolve(pom));
+			Files.delete(localRepository.resolve(jar));
+			Maven stale = maven(localRepository, url(server));
+			stale.saveToLocalRepository = true;
+			Artifact again = d("io.github.arlol:print:0.0.1");
+			stale.resolve(again, List.of(), MavenExecutor::classPathFilter);
+			// the POM is fetched again when it is read, the jar only once the
+			// launch checks the class path
+			assertThat(localRepository.resolve(pom)).exists();
+			assertThat(stale.classPathUri(again))
+					.isEqualTo(localRepository.resolve(jar).toUri());
+			assertThat(requests)
+					.contains("/" + pom.toString().replace('\\', '/'))
+					.doesNotContain("/" + jar.toString().replace('\\', '/'));
+
+			String[] arguments = new String[] { "io.github.arlol:print:0.0.1",
+					"--mainClass", "io.github.arlol.print.App",
+					"--repositories", url(server), "--localRepository",
+					localRepository.toString(), "--cacheDirectory",
+					cacheDirectory.toString(), "--saveToLocalRepository" };
+			new MavenExecutor().parseArguments(arguments).execute();
+			Files.delete(localRepository.resolve(jar));
+			requests.clear();
+			new MavenExecutor().parseArguments(arguments).execute();
+			assertThat(localRepository.resolve(jar)).exists();
+			assertThat(requests)
+					.containsExactly("/" + jar.toString().replace('\\', '/'));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testMissingDependencyJarIsFetchedAgain(
+			@TempDir Path remoteRepository,
+			@TempDir Path localRepository
+	) throws Exception {
+		checksummed(remoteRepository);
+		pom(remoteRepository, "test:app:1", "io.github.arlol:print:0.0.1");
+		Path jar = Maven.path(d("test:app:1"), "jar");
+		jar(remoteRepository.resolve(jar), false, Map.of("app.txt", "app"));
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer server = server(exchange -> {
+			requests.add(exchange.getRequestURI().getPath());
+			serve(remoteRepository, exchange);
+		});
+		try {
+			String[] arguments = new String[] { "test:app:1", "--mainClass",
+					"io.github.arlol.print.App", "--repositories", url(server),
+					"--localRepository", localRepository.toString(),
+					"--cacheDirectory", cacheDirectory.toString(),
+					"--saveToLocalRepository" };
+			new MavenExecutor().parseArguments(arguments).execute();
+			// the main class still loads without the jar, so only the check
+			// before the launch notices it is gone
+			Files.delete(localRepository.resolve(jar));
+			requests.clear();
+			new MavenExecutor().parseArguments(arguments).execute();
+			assertThat(localRepository.resolve(jar)).exists();
+			assertThat(requests)
+					.contains("/" + jar.toString().replace('\\', '/'));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testStats(@TempDir Path localRepository) throws Exception {
+		Path repository = TestPaths.get("maven-repository");
+		HttpServer server = server(exchange -> serve(repository, exchange));
+		try {
+			Maven maven = maven(localRepository, url(server));
+			maven.resolve(
+					d("io.github.arlol:newlinechecker:0.0.1-SNAPSHOT"),
+					List.of(),
+					MavenExecutor::classPathFilter
+			);
+			Stats stats = maven.stats;
+			assertThat(stats.count("pom")).isEqualTo(maven.pomCache.misses());
+			assertThat(stats.count("parse")).isEqualTo(stats.count("pom"));
+			assertThat(stats.count("download")).isPositive();
+			assertThat(stats.millis("pom")).isPositive();
+			assertThat(stats.slowest()).hasSize(10)
+					.extracting(Entry::getValue)
+					.isSortedAccordingTo(Collections.reverseOrder());
+			assertThat(stats.report(maven)).contains(
+					"pom",
+					"download",
+					url(server).replaceAll("/$", ""),
+					"~Connections",
+					"Total (connections estimated)",
+					"Lockfile miss"
+			);
+			assertThat(stats.json(maven)).startsWith("{\"lockfile\":false,")
+					.contains("\"phases\":{\"settings\":{\"count\":0,")
+					.contains("\"warmUpEstimatedSavingMillis\":0.000,")
+					.contains(
+							"\"requests\":" + maven.transport.requests()
+									+ ",\"estimatedConnections\":"
+									+ maven.transport.estimatedConnections()
+									+ ",\"repositories\":"
+					)
+					.endsWith("]}");
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testRepositoryCacheSkipsKnownMisses(
+			@TempDir Path localRepository,
+			@TempDir Path emptyRepository
+	) throws Exception {
+		Path repository = TestPaths.get("maven-repository");
+		AtomicInteger secondaryRequests = new AtomicInteger();
+		HttpServer secondary = server(exchange -> {
+			secondaryRequests.incrementAndGet();
+			serve(emptyRepository, exchange);
+		});
+		HttpServer primary = server(exchange -> serve(repository, exchange));
+		try {
+			for (int run = 0; run < 2; run++) {
+				Maven maven = maven(
+						localRepository,
+						url(secondary),
+						url(primary)
+				);
+				maven.resolve(
+						d("io.github.arlol:print:0.0.1"),
+						List.of(),
+						MavenExecutor::classPathFilter
+				);
+				maven.repositoryCache().write();
+			}
+			assertThat(secondaryRequests).hasValue(1);
+		} finally {
+			primary.stop(0);
+			secondary.stop(0);
+		}
+	}
+
+	@Test
+	public void testRepositoryCacheSkipsStaleRemotes(
+			@TempDir Path localRepository
+	) throws Exception {
+		Path repository = TestPaths.get("maven-repository");
+		HttpServer unreachable = server(
+				exchange -> serve(repository, exchange)
+		);
+		String stale = url(unreachable);
+		unreachable.stop(0);
+		HttpServer live = server(exchange -> serve(repository, exchange));
+		try {
+			for (String[] repositories : List.of(
+					new String[] { url(live) },
+					new String[] { stale, url(live) }
+			)) {
+				Maven maven = maven(localRepository, repositories);
+				Artifact artifact = d("io.github.arlol:print:0.0.1");
+				maven.repositoryCache().found(artifact, stale);
+				maven.resolve(
+						artifact,
+						List.of(),
+						MavenExecutor::classPathFilter
+				);
+				assertThat(artifact.remote).isEqualTo(url(live));
+			}
+		} finally {
+			live.stop(0);
+		}
+	}
+
+	@Test
+	public void testChecksumsAreCompacted() throws Exception {
+		Path checksums = cacheDirectory.resolve("checksums.tsv");
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i <= RepositoryCache.CHECKSUMS; i++) {
+			lines.add("http://localhost/" + i + ".jar\t" + i);
+		}
+		Files.write(checksums, lines);
+		RepositoryCache cache = RepositoryCache.read(
+				cacheDirectory.resolve("repositories.tsv"),
+				Duration.ofHours(1)
+		);
+		assertThat(Files.readAllLines(checksums))
+				.hasSize(RepositoryCache.CHECKSUMS / 2)
+				.endsWith(lines.get(lines.size() - 1));
+		assertThat(cache.checksum(URI.create("http://localhost/0.jar")))
+				.isNull();
+		assertThat(
+				cache.checksum(
+						URI.create(
+								"http://localhost/" + RepositoryCache.CHECKSUMS
+										+ ".jar"
+						)
+				)
+		).isEqualTo(String.valueOf(RepositoryCache.CHECKSUMS));
+	}
+
+	@Test
+	public void testRepositoryCacheConcurrentWrites() throws Exception {
+		Path file = cacheDirectory.resolve("repositories.tsv");
+		RepositoryCache cache = new RepositoryCache(file, Duration.ofHours(1));
+		List<Future<?>> writes = new ArrayList<>();
+		try (ExecutorService executor = Executors
+				.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < 200; i++) {
+				Artifact artifact = d("io.github.arlol:print:0.0." + i);
+				writes.add(executor.submit(() -> {
+					cache.found(artifact, "http://localhost/");
+					cache.write();
+				}));
+			}
+			for (Future<?> write : writes) {
+				write.get();
+			}
+		}
+		try (Stream<Path> files = Files.list(cacheDirectory)) {
+			assertThat(files).containsExactly(file);
+		}
+		assertThat(Files.readAllLines(file)).hasSize(200)
+				.allMatch(line -> line.startsWith("found\t"));
+	}
+
+	@Test
+	public void testRaceRepositoriesKeepsPriorityOrder(
+			@TempDir Path localRepository,
+			@TempDir Path emptyRepository
+	) throws Exception {
+		Path repository = TestPaths.get("maven-repository");
+		HttpServer missing = server(exchange -> {
+			sleep(200);
+			serve(emptyRepository, exchange);
+		});
+		HttpServer slow = server(exchange -> {
+			sleep(400);
+			serve(repository, exchange);
+		});
+		HttpServer fast = server(exchange -> serve(repository, exchange));
+		try {
+			Maven maven = maven(
+					localRepository,
+					url(missing),
+					url(slow),
+					url(fast)
+			);
+			maven.raceRepositories = true;
+			Artifact artifact = d("io.github.arlol:print:0.0.1");
+			maven.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
+			assertThat(artifact.remote).isEqualTo(url(slow));
+			assertThat(
+					maven.repositoryCache()
+							.isMissing(
+									url(missing),
+									Maven.path(artifact, "pom")
+							)
+			).isTrue();
+		} finally {
+			missing.stop(0);
+			slow.stop(0);
+			fast.stop(0);
+		}
+	}
+
+	@Test
+	public void testJarDownloadsOverlapResolution(@TempDir Path localRepository)
+			throws Exception {
+		Path repository = TestPaths.get("maven-repository");
+		HttpServer server = server(exchange -> serve(repository, exchange));
+		try {
+			Maven maven = maven(localRepository, url(server));
+			maven.saveToLocalRepository = true;
+			Artifact artifact = d("io.github.arlol:print:0.0.1");
+			maven.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
+			Path jar = Maven.path(artifact, "jar");
+			assertThat(maven.downloads).containsKey(jar);
+			assertThat(Path.of(maven.uri(artifact, "jar")))
+					.isEqualTo(localRepository.resolve(jar))
+					.hasSameBinaryContentAs(repository.resolve(jar));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testMemoryClassLoaderFetchesEachJarOnce(
+			@TempDir Path localRepository
+	) throws Exception {
+		Path repository = TestPaths.get("maven-repository");
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer server = server(exchange -> {
+			requests.add(
+					exchange.getRequestMethod() + " "
+							+ exchange.getRequestURI().getPath()
+			);
+			serve(repository, exchange);
+		});
+		try {
+			MavenExecutor executor = new MavenExecutor().parseArguments(
+					new String[] { "io.github.arlol:print:0.0.1", "--mainClass",
+							"io.github.arlol.print.App", "--repositories",
+							url(server), "--localRepository",
+							localRepository.toString(), "--cacheDirectory",
+							cacheDirectory.toString() }
+			);
+			executor.execute();
+			assertThat(requests)
+					.noneMatch(request -> request.startsWith("HEAD"))
+					.containsOnlyOnce(
+							"GET /io/github/arlol/print/0.0.1/print-0.0.1.jar"
+					);
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testContentsRespectsParallelism() throws Exception {
+		byte[] jar = Files.readAllBytes(
+				TestPaths.get("maven-repository")
+						.resolve("io/github/arlol/print/0.0.1/print-0.0.1.jar")
+		);
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger peak = new AtomicInteger();
+		HttpServer server = HttpServer.create(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				0
+		);
+		server.createContext("/", exchange -> {
+			if (exchange.getRequestURI().getPath().endsWith(".sha1")) {
+				exchange.sendResponseHeaders(404, -1);
+				exchange.close();
+				return;
+			}
+			peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			sleep(50);
+			inFlight.decrementAndGet();
+			exchange.sendResponseHeaders(200, jar.length);
+			try (OutputStream responseBody = exchange.getResponseBody()) {
+				responseBody.write(jar);
+			}
+			exchange.close();
+		});
+		try (ExecutorService handlers = Executors
+				.newVirtualThreadPerTaskExecutor()) {
+			server.setExecutor(handlers);
+			server.start();
+			try {
+				Maven maven = maven();
+				maven.parallelism = 2;
+				URL[] jars = new URL[8];
+				for (int i = 0; i < jars.length; i++) {
+					jars[i] = URI.create(url(server) + "print-" + i + ".jar")
+							.toURL();
+				}
+				assertThat(maven.contents(jars)).hasSize(8)
+						.allMatch(content -> Arrays.equals(content, jar));
+				assertThat(peak).hasValueBetween(1, 2);
+			} finally {
+				server.stop(0);
+			}
+		}
+	}
+
+	@Test
+	public void testMemoryClassLoader() throws Exception {
+		Path jar = TestPaths.get("maven-repository")
+				.resolve("io/github/arlol/print/0.0.1/print-0.0.1.jar");
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes()
+				.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes()
+				.put(Attributes.Name.IMPLEMENTATION_VERSION, "0.0.1");
+		ByteArrayOutputStream versioned = new ByteArrayOutputStream();
+		try (JarFile in = new JarFile(jar.toFile());
+				JarOutputStream out = new JarOutputStream(
+						versioned,
+						manifest
+				)) {
+			JarEntry entry = in.getJarEntry("io/github/arlol/print/App.class");
+			out.putNextEntry(new JarEntry(entry.getName()));
+			try (InputStream content = in.getInputStream(entry)) {
+				content.transferTo(out);
+			}
+		}
+		URL location = URI.create("https://repo.example/print-0.0.1.jar")
+				.toURL();
+		MemoryClassLoader classLoader = new MemoryClassLoader(
+				new URL[] { location, jar.toUri().toURL() },
+				List.of(versioned.toByteArray(), Files.readAllBytes(jar))
+		);
+		Class<?> app = classLoader.loadClass("io.github.arlol.print.App");
+		assertThat(app.getClassLoader()).isSameAs(classLoader);
+		assertThat(app.getProtectionDomain().getCodeSource().getLocation())
+				.isEqualTo(location);
+		assertThat(app.getPackage().getName())
+				.isEqualTo("io.github.arlol.print");
+		assertThat(app.getPackage().getImplementationVersion())
+				.isEqualTo("0.0.1");
+		assertThat(
+				Collections
+						.list(classLoader.getResources("META-INF/MANIFEST.MF"))
+		).filteredOn(url -> "mvnx".equals(url.getProtocol())).hasSize(2);
+		try (InputStream resource = classLoader
+				.getResourceAsStream("io/github/arlol/print/App.class")) {
+			assertThat(resource).isNotNull();
+			assertThat(resource.readAllBytes()).isNotEmpty();
+		}
+		assertThatThrownBy(
+				() -> classLoader.loadClass("io.github.arlol.Missing")
+		).isInstanceOf(ClassNotFoundException.class);
+	}
+
+	@Test
+	public void testBundle(@TempDir Path directory) throws Exception {
+		Path first = jar(
+				directory.resolve("first.jar"),
+				false,
+				Map.of(
+						"shared.txt",
+						"first",
+						"META-INF/services/example.Service",
+						"example.First",
+						"META-INF/FIRST.SF",
+						"signature"
+				)
+		);
+		Path second = jar(
+				directory.resolve("second.jar"),
+				true,
+				Map.of(
+						"shared.txt",
+						"second",
+						"only.txt",
+						"second",
+						"META-INF/services/example.Service",
+						"example.Second"
+				)
+		);
+		MavenExecutor executor = new MavenExecutor();
+		executor.maven.cacheDirectory = directory.resolve("cache");
+		URL[] jars = { first.toUri().toURL(), second.toUri().toURL() };
+		URL bundle = executor.bundle(jars);
+		try (JarFile jar = new JarFile(Path.of(bundle.toURI()).toFile())) {
+			assertThat(jar.isMultiRelease()).isTrue();
+			assertThat(content(jar, "shared.txt")).isEqualTo("first");
+			assertThat(content(jar, "only.txt")).isEqualTo("second");
+			assertThat(content(jar, "META-INF/services/example.Service"))
+					.isEqualTo("example.First\nexample.Second\n");
+			assertThat(jar.getEntry("META-INF/FIRST.SF")).isNull();
+		}
+		FileTime written = Files.getLastModifiedTime(Path.of(bundle.toURI()));
+		assertThat(executor.bundle(jars)).isEqualTo(bundle);
+		assertThat(Files.getLastModifiedTime(Path.of(bundle.toURI())))
+				.isEqualTo(written);
+	}
+
+	private static Path jar(
+			Path file,
+			boolean multiRelease,
+			Map<String, String> entries
+	) throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes()
+				.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		if (multiRelease) {
+			manifest.getMainAttributes()
+					.put(Attributes.Name.MULTI_RELEASE, "true");
+		}
+		try (JarOutputStream jar = new JarOutputStream(
+				Files.newOutputStream(file),
+				manifest
+		)) {
+			for (Map.Entry<String, String> entry : new TreeMap<>(entries)
+					.entrySet()) {
+				jar.putNextEntry(new JarEntry(entry.getKey()));
+				jar.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+				jar.closeEntry();
+			}
+		}
+		return file;
+	}
+
+	private static String content(JarFile jar, String name) throws IOException {
+		try (InputStream in = jar.getInputStream(jar.getEntry(name))) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static HttpServer server(HttpHandler handler) throws IOException {
+		HttpServer server = HttpServer.create(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				0
+		);
+		server.createContext("/", handler);
+		server.start();
+		return server;
+	}
+
+	private static String url(HttpServer server) {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+	}
+
+	/**
+	 * Copies the print artifact into the repository with .sha1 sidecars.
+	 */
+	private static void checksummed(Path repository) throws Exception {
+		Path source = TestPaths.get("maven-repository")
+				.resolve("io/github/arlol/print/0.0.1");
+		Path target = repository.resolve("io/github/arlol/print/0.0.1");
+		Files.createDirectories(target);
+		for (String name : List.of("print-0.0.1.pom", "print-0.0.1.jar")) {
+			byte[] content = Files.readAllBytes(source.resolve(name));
+			Files.write(target.resolve(name), content);
+			Files.writeString(
+					target.resolve(name + ".sha1"),
+					HexFormat.of()
+							.formatHex(
+									MessageDigest.getInstance("SHA-1")
+											.digest(content)
+							)
+			);
+		}
+	}
+
+	private static void corrupt(Path repository, HttpExchange exchange)
+			throws IOException {
+		byte[] body = Files.readAllBytes(
+				repository.resolve(
+						exchange.getRequestURI().getPath().substring(1)
+				)
+		);
+		body[body.length / 2] ^= 1;
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream responseBody = exchange.getResponseBody()) {
+			responseBody.write(body);
+		}
+		exchange.close();
+	}
+
+	private static void serve(Path repository, HttpExchange exchange)
+			throws IOException {
+		Path file = repository
+				.resolve(exchange.getRequestURI().getPath().substring(1));
+		if (Files.isRegularFile(file)) {
+			byte[] body = Files.readAllBytes(file);
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream responseBody = exchange.getResponseBody()) {
+				responseBody.write(body);
+			}
+		} else {
+			exchange.sendResponseHeaders(404, -1);
+		}
+		exchange.close();
+	}
+
 	@Test
 	public void testDependencyWithTransientDependencies() throws Exception {
 		Collection<Artifact> dependencies = artifactDependencies(
@@ -323,6 +1658,63 @@ public class MavenExecutorTest {
 		assertThat(template).isEqualTo("${key1}");
 	}
 
+	@Test
+	public void testCyclicProperty() throws Exception {
+		Map<String, String> properties = Map
+				.of("key1", "a${key2}", "key2", "b${key1}");
+		assertThatThrownBy(() -> template("${key1}", properties::get))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessage("Cyclic property reference key1 -> key2 -> key1");
+	}
+
+	@Test
+	public void testPropertyScopeLooksUpEachKeyOnce() throws Exception {
+		Map<String, String> properties = Map
+				.of("version", "${major}.${minor}", "major", "1", "minor", "2");
+		List<String> lookups = new ArrayList<>();
+		PropertyScope scope = new PropertyScope(key -> {
+			lookups.add(key);
+			return properties.get(key);
+		});
+		assertThat(scope.template("${version}-${version}.${missing}"))
+				.isEqualTo("1.2-1.2.${missing}");
+		assertThat(scope.template("v${major}")).isEqualTo("v1");
+		assertThat(lookups)
+				.containsExactly("version", "major", "minor", "missing");
+	}
+
+	private static void pom(
+			Path repository,
+			String coordinates,
+			String... dependencies
+	) throws IOException {
+		String[] parts = coordinates.split(":");
+		StringBuilder pom = new StringBuilder("<project><groupId>")
+				.append(parts[0])
+				.append("</groupId><artifactId>")
+				.append(parts[1])
+				.append("</artifactId><version>")
+				.append(parts[2])
+				.append("</version><dependencies>");
+		for (String dependency : dependencies) {
+			String[] dependencyParts = dependency.split(":");
+			pom.append("<dependency><groupId>")
+					.append(dependencyParts[0])
+					.append("</groupId><artifactId>")
+					.append(dependencyParts[1])
+					.append("</artifactId><version>")
+					.append(dependencyParts[2])
+					.append("</version></dependency>");
+		}
+		pom.append("</dependencies></project>");
+		Path path = repository.resolve(
+				parts[0] + "/" + parts[1] + "/" + parts[2] + "/" + parts[1]
+						+ "-" + parts[2] + ".pom"
+		);
+		Files.createDirectories(path.getParent());
+		Files.writeString(path, pom);
+	}
+
 	public String template(
 			String text,
 			Function<String, String> lookupFunction
@@ -358,15 +1750,28 @@ public class MavenExecutorTest {
 	}
 
 	public Artifact artifact(String artifactIdentifier) throws Exception {
-		Maven maven = new MavenExecutor.Maven();
-		maven.saveToLocalRepository = false;
-		maven.localRepository = TestPaths.get("maven-repository");
-		maven.repositories = List.of("http://localhost:62085");
+		return artifact(
+				artifactIdentifier,
+				new MavenExecutor.Maven().parallelism
+		);
+	}
+
+	public Artifact artifact(String artifactIdentifier, int parallelism)
+			throws Exception {
+		Maven maven = maven();
+		maven.parallelism = parallelism;
 		Artifact artifact = d(artifactIdentifier);
 		maven.resolve(artifact, List.of(), MavenExecutor::classPathFilter);
 		return artifact;
 	}
 
+	public Maven maven() throws Exception {
+		return maven(
+				TestPaths.get("maven-repository"),
+				"http://localhost:62085"
+		);
+	}
+
 	public Collection<Artifact> artifactDependencies(String artifactIdentifier)
 			throws Exception {
 		Artifact artifact = artifact(artifactIdentifier);
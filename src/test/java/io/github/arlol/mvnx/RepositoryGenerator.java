@@ -0,0 +1,178 @@
+package io.github.arlol.mvnx;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Writes a synthetic Maven repository of {@link #depth} levels with
+ * {@link #width} artifacts each. Every artifact depends on {@link #fanOut}
+ * artifacts of the next level, so artifacts are shared by many paths. All of
+ * them inherit from one parent that imports {@link #boms} BOMs managing their
+ * versions plus {@link #managed} unrelated entries. The managed version is
+ * reached through a chain of {@link #propertyChain} properties. Without BOMs
+ * the dependencies declare their version themselves. Each jar artifact gets a
+ * jar holding only a manifest.
+ */
+public class RepositoryGenerator {
+
+	public static final String GROUP_ID = "generated";
+
+	public int depth = 4;
+	public int width = 10;
+	public int fanOut = 3;
+	public int managed = 0;
+	public int propertyChain = 1;
+	public int boms = 1;
+
+	/**
+	 * @return the coordinates of the root artifact
+	 */
+	public String generate(Path repository) throws IOException {
+		StringBuilder imports = new StringBuilder(
+				"<dependencyManagement><dependencies>"
+		);
+		for (int bom = 0; bom < boms; bom++) {
+			writeBom(repository, bom);
+			imports.append(dependency("bom" + bom, "1", "pom", "import"));
+		}
+		imports.append("</dependencies></dependencyManagement>");
+		write(repository, "parent", "pom", "", imports.toString());
+		for (int level = 0; level < depth; level++) {
+			for (int i = 0; i < width; i++) {
+				write(
+						repository,
+						artifactId(level, i),
+						"jar",
+						parent(),
+						dependencies(level + 1, i)
+				);
+			}
+		}
+		write(repository, "root", "jar", parent(), dependencies(0, 0));
+		return GROUP_ID + ":root:1";
+	}
+
+	private void writeBom(Path repository, int bom) throws IOException {
+		StringBuilder properties = new StringBuilder("<properties>");
+		for (int i = 0; i < propertyChain; i++) {
+			String value = i + 1 < propertyChain
+					? "${generated.version." + (i + 1) + "}"
+					: "1";
+			properties.append("<generated.version.")
+					.append(i)
+					.append(">")
+					.append(value)
+					.append("</generated.version.")
+					.append(i)
+					.append(">");
+		}
+		properties.append("</properties>");
+		String version = propertyChain > 0 ? "${generated.version.0}" : "1";
+		StringBuilder management = new StringBuilder(
+				"<dependencyManagement><dependencies>"
+		);
+		for (int level = 0; level < depth; level++) {
+			for (int i = 0; i < width; i++) {
+				if ((level * width + i) % boms == bom) {
+					management.append(
+							dependency(
+									artifactId(level, i),
+									version,
+									null,
+									null
+							)
+					);
+				}
+			}
+		}
+		for (int i = bom; i < managed; i += boms) {
+			management.append(dependency("managed" + i, version, null, null));
+		}
+		management.append("</dependencies></dependencyManagement>");
+		write(
+				repository,
+				"bom" + bom,
+				"pom",
+				"",
+				properties.toString() + management
+		);
+	}
+
+	private String dependencies(int level, int index) {
+		if (level >= depth) {
+			return "";
+		}
+		StringBuilder dependencies = new StringBuilder("<dependencies>");
+		for (int k = 0; k < fanOut; k++) {
+			dependencies.append("<dependency><groupId>")
+					.append(GROUP_ID)
+					.append("</groupId><artifactId>")
+					.append(artifactId(level, (index * fanOut + k) % width))
+					.append("</artifactId>")
+					.append(boms == 0 ? "<version>1</version>" : "")
+					.append("</dependency>");
+		}
+		return dependencies.append("</dependencies>").toString();
+	}
+
+	private static String artifactId(int level, int index) {
+		return "level" + level + "-" + index;
+	}
+
+	private static String parent() {
+		return "<parent><groupId>" + GROUP_ID
+				+ "</groupId><artifactId>parent</artifactId>"
+				+ "<version>1</version></parent>";
+	}
+
+	private static String dependency(
+			String artifactId,
+			String version,
+			String type,
+			String scope
+	) {
+		return "<dependency><groupId>" + GROUP_ID + "</groupId><artifactId>"
+				+ artifactId + "</artifactId><version>" + version + "</version>"
+				+ (type == null ? "" : "<type>" + type + "</type>")
+				+ (scope == null ? "" : "<scope>" + scope + "</scope>")
+				+ "</dependency>";
+	}
+
+	private static void write(
+			Path repository,
+			String artifactId,
+			String packaging,
+			String parent,
+			String content
+	) throws IOException {
+		Path directory = repository.resolve(GROUP_ID)
+				.resolve(artifactId)
+				.resolve("1");
+		Files.createDirectories(directory);
+		if (packaging.equals("jar")) {
+			Manifest manifest = new Manifest();
+			manifest.getMainAttributes()
+					.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+			try (JarOutputStream jar = new JarOutputStream(
+					Files.newOutputStream(
+							directory.resolve(artifactId + "-1.jar")
+					),
+					manifest
+			)) {
+				jar.flush();
+			}
+		}
+		Files.writeString(
+				directory.resolve(artifactId + "-1.pom"),
+				"<project>" + parent + "<groupId>" + GROUP_ID
+						+ "</groupId><artifactId>" + artifactId
+						+ "</artifactId><version>1</version><packaging>"
+						+ packaging + "</packaging>" + content + "</project>"
+		);
+	}
+
+}
@@ -0,0 +1,132 @@
+package io.github.arlol.mvnx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a Maven repository directory over HTTP on the loopback interface as a
+ * stand-in for a remote repository. Every request is delayed by
+ * {@link #latency}, fails with a 500 at {@link #errorRate} and streams its body
+ * at no more than {@link #bytesPerSecond} when that is positive. The settings
+ * may be changed while the server is running.
+ */
+public class RepositoryServer implements AutoCloseable {
+
+	private static final int CHUNK_SIZE = 8192;
+
+	public volatile Duration latency = Duration.ZERO;
+	public volatile double errorRate = 0;
+	public volatile long bytesPerSecond = 0;
+
+	private final Path repository;
+	private final HttpServer server;
+	private final ExecutorService executor = Executors
+			.newVirtualThreadPerTaskExecutor();
+	private final Random random = new Random(0);
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+
+	public RepositoryServer(Path repository) throws IOException {
+		this.repository = repository;
+		server = HttpServer.create(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				0
+		);
+		server.createContext("/", exchange -> {
+			try (exchange) {
+				handle(exchange);
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public String url() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+	}
+
+	public long requests() {
+		return requests.get();
+	}
+
+	public long errors() {
+		return errors.get();
+	}
+
+	public long bytes() {
+		return bytes.get();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.close();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		sleep(latency.toMillis());
+		boolean error;
+		synchronized (random) {
+			error = random.nextDouble() < errorRate;
+		}
+		if (error) {
+			errors.incrementAndGet();
+			exchange.sendResponseHeaders(500, -1);
+			return;
+		}
+		Path file = repository
+				.resolve(exchange.getRequestURI().getPath().substring(1))
+				.normalize();
+		if (!file.startsWith(repository) || !Files.isRegularFile(file)) {
+			exchange.sendResponseHeaders(404, -1);
+			return;
+		}
+		long size = Files.size(file);
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders()
+					.set("Content-Length", Long.toString(size));
+			exchange.sendResponseHeaders(200, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(200, size);
+		try (InputStream in = Files.newInputStream(file);
+				OutputStream out = exchange.getResponseBody()) {
+			byte[] chunk = new byte[CHUNK_SIZE];
+			for (int read = in.read(chunk); read != -1; read = in.read(chunk)) {
+				out.write(chunk, 0, read);
+				bytes.addAndGet(read);
+				long limit = bytesPerSecond;
+				if (limit > 0) {
+					sleep(read * 1000L / limit);
+				}
+			}
+		}
+	}
+
+	private static void sleep(long millis) {
+		if (millis <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}